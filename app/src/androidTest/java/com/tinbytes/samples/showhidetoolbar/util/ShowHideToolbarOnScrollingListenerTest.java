@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.content.Context;
+import android.os.Debug;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.Toolbar;
+import android.test.AndroidTestCase;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import com.tinbytes.samples.showhidetoolbar.R;
+
+/**
+ * Runs on a device: the listener's per-frame path with real views, from the scroll callbacks through the offset
+ * tracker to the toolbar, the linked views and the offset observers.
+ */
+public class ShowHideToolbarOnScrollingListenerTest extends AndroidTestCase {
+  private static final int FRAMES = 10000;
+  private static final int TOOLBAR_HEIGHT = 168;
+
+  private RecyclerView recyclerView;
+  private Toolbar toolbar;
+  private RecyclerViewUtils.ShowHideToolbarOnScrollingListener listener;
+  private int observedMoves;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    Context context = new ContextThemeWrapper(getContext(), R.style.AppTheme);
+    recyclerView = new RecyclerView(context);
+    recyclerView.setLayoutManager(new LinearLayoutManager(context));
+    toolbar = new Toolbar(context);
+    layout(toolbar, TOOLBAR_HEIGHT);
+    View bottomBar = new View(context);
+    layout(bottomBar, TOOLBAR_HEIGHT / 2);
+
+    listener = new RecyclerViewUtils.ShowHideToolbarOnScrollingListener(toolbar);
+    listener.addLinkedView(bottomBar, ScrollLinkedViews.DIRECTION_DOWN, 0);
+    listener.addOffsetObserver(new RecyclerViewUtils.ShowHideToolbarOnScrollingListener.OffsetObserver() {
+      @Override
+      public void onToolbarOffsetChanged(int offset, int direction, float hiddenFraction) {
+        observedMoves++;
+      }
+    });
+    // Dragged the whole time: going idle starts a hide/show animation, which needs a Looper thread
+    listener.onScrollStateChanged(recyclerView, RecyclerView.SCROLL_STATE_DRAGGING);
+  }
+
+  private static void layout(View view, int height) {
+    view.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+        View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+    view.layout(0, 0, 1080, height);
+  }
+
+  /**
+   * Drags down and back up in alternating bursts, a few scroll events per frame, then draws the frame.
+   */
+  private void scroll(int frames) {
+    int seed = 42;
+    for (int frame = 0; frame < frames; frame++) {
+      int direction = frame / 500 % 2 == 0 ? 1 : -1;
+      for (int event = frame % 3; event >= 0; event--) {
+        seed = seed * 1103515245 + 12345;
+        listener.onScrolled(recyclerView, 0, direction * (1 + (seed >>> 16) % 30));
+      }
+      toolbar.getViewTreeObserver().dispatchOnPreDraw();
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  public void testScrollAllocatesNothing() {
+    // Warm up: the first frame registers the frame listener, the first scroll syncs the offset
+    scroll(FRAMES);
+    observedMoves = 0;
+
+    Debug.startAllocCounting();
+    Debug.resetThreadAllocCount();
+    scroll(FRAMES);
+    int allocated = Debug.getThreadAllocCount();
+    Debug.stopAllocCounting();
+
+    assertTrue("The toolbar never moved", observedMoves > 0);
+    assertEquals("Objects allocated over " + FRAMES + " frames", 0, allocated);
+  }
+}
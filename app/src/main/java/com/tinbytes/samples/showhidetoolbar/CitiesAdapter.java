@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar;
+
+import android.support.v7.widget.RecyclerView;
+import android.text.Layout;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.tinbytes.samples.showhidetoolbar.util.ItemPrefetcher;
+import com.tinbytes.samples.showhidetoolbar.util.ListDiff;
+import com.tinbytes.samples.showhidetoolbar.util.ListDiffer;
+import com.tinbytes.samples.showhidetoolbar.util.PagedDataSource;
+import com.tinbytes.samples.showhidetoolbar.util.RecyclerViewUtils;
+import com.tinbytes.samples.showhidetoolbar.util.TextLayoutCache;
+import com.tinbytes.samples.showhidetoolbar.util.ViewHolderPool;
+import com.tinbytes.samples.showhidetoolbar.widget.LayoutTextView;
+
+/**
+ * Cities adapter to hold sample data for our RecyclerView. Data comes from a PagedDataSource, rows not loaded yet
+ * show a placeholder until their page arrives. A filter restricts the list to a subset of the data positions.
+ * Text layouts of the rows about to be shown are built in the background, see TextLayoutCache.
+ */
+class CitiesAdapter extends RecyclerView.Adapter<CitiesAdapter.ViewHolder>
+    implements PagedDataSource.Callback, ItemPrefetcher.Prefetchable {
+  // Rows ahead of the one being bound whose text layouts are built in the background
+  private static final int LAYOUT_PREFETCH = 8;
+
+  private PagedDataSource data;
+  // Ascending data positions shown by the list, or null to show everything
+  private int[] filter;
+  private LayoutInflater inflater;
+  // Text layouts of upcoming rows, built in the background
+  private final TextLayoutCache layoutCache = new TextLayoutCache();
+  // Last position bound, tells the scrolling direction to prefetch layouts for
+  private int lastBoundPosition;
+  // Filter changes are diffed in the background and applied as granular notifications
+  private final ListDiffer differ = new ListDiffer();
+  private final RecyclerViewUtils.AdapterUpdateCallback updateCallback =
+      new RecyclerViewUtils.AdapterUpdateCallback(this);
+
+  static class ViewHolder extends RecyclerView.ViewHolder {
+    LayoutTextView tvName;
+    // Whether it was just created on demand and not bound yet
+    boolean fresh;
+
+    ViewHolder(View v) {
+      super(v);
+      tvName = (LayoutTextView) v.findViewById(R.id.tvName);
+    }
+  }
+
+  CitiesAdapter(PagedDataSource data) {
+    this.data = data;
+    layoutCache.setMaxPrefetchAge(LAYOUT_PREFETCH * 4);
+    data.setCallback(this);
+  }
+
+  @Override
+  public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+    if (inflater == null) {
+      // Rows live in a pool shared across screens, so they must not hold on to an Activity
+      inflater = LayoutInflater.from(
+          new ContextThemeWrapper(parent.getContext().getApplicationContext(), R.style.AppTheme));
+    }
+    ViewHolder holder = new ViewHolder(inflater.inflate(R.layout.city_item, parent, false));
+    holder.fresh = !ViewHolderPool.getInstance().onHolderCreated();
+    return holder;
+  }
+
+  @Override
+  public void onBindViewHolder(ViewHolder holder, int position) {
+    if (holder.fresh) {
+      holder.fresh = false;
+    } else {
+      ViewHolderPool.getInstance().onHolderReused();
+    }
+
+    // Recycled holders know the width rows are laid out at
+    int width = holder.tvName.getContentWidth();
+    if (width > 0) {
+      layoutCache.setTextAppearance(holder.tvName.getPaint(), width);
+    }
+
+    int dataPosition = getDataPosition(position);
+    String name = data.get(dataPosition);
+    if (name != null) {
+      Layout layout = layoutCache.get(dataPosition);
+      if (layout != null) {
+        holder.tvName.setLayout(layout);
+      } else {
+        holder.tvName.setText(name);
+      }
+    } else {
+      holder.tvName.setText(R.string.city_placeholder);
+    }
+    prefetchLayouts(position);
+  }
+
+  private int getDataPosition(int position) {
+    return filter == null ? position : filter[position];
+  }
+
+  /**
+   * Adapter position of the first row at or after the data position, e.g. the first city of a section.
+   */
+  public int getAdapterPosition(int dataPosition) {
+    return filter == null ? dataPosition : lowerBound(filter, dataPosition);
+  }
+
+  private void prefetchLayouts(int position) {
+    int direction = position >= lastBoundPosition ? 1 : -1;
+    lastBoundPosition = position;
+    int count = getItemCount();
+    for (int i = 1; i <= LAYOUT_PREFETCH; i++) {
+      int p = position + i * direction;
+      if (p < 0 || p >= count) {
+        break;
+      }
+      prefetch(p);
+    }
+  }
+
+  /**
+   * Loads the row's page if needed and starts building its text layout.
+   */
+  @Override
+  public void prefetch(int position) {
+    if (position >= getItemCount()) {
+      // The filter changed since the row was asked for
+      return;
+    }
+    int dataPosition = getDataPosition(position);
+    String name = data.get(dataPosition);
+    if (name != null) {
+      layoutCache.prefetch(dataPosition, name);
+    }
+  }
+
+  @Override
+  public int getItemCount() {
+    return filter == null ? data.getCount() : filter.length;
+  }
+
+  @Override
+  public void onPageLoaded(int start, int count) {
+    if (filter == null) {
+      notifyItemRangeChanged(start, count);
+    } else {
+      // Only the filtered rows that fall inside the page changed
+      int from = lowerBound(filter, start);
+      int to = lowerBound(filter, start + count);
+      if (to > from) {
+        notifyItemRangeChanged(from, to - from);
+      }
+    }
+  }
+
+  private static int lowerBound(int[] values, int value) {
+    int lo = 0;
+    int hi = values.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (values[mid] < value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Shows only the given ascending data positions, or everything if null. The list is updated once the changes
+   * have been computed in the background, row by row unless more than ListDiff.DEFAULT_MAX_EDITS rows change, in
+   * which case it's simply refreshed.
+   */
+  void setFilter(final int[] newFilter) {
+    final int[] oldFilter = filter;
+    final int count = data.getCount();
+    differ.submit(new ListDiffer.Task() {
+      @Override
+      public ListDiff calculate() {
+        return ListDiff.computeSorted(new ListDiff.SortedCallback() {
+          @Override
+          public int getOldSize() {
+            return oldFilter == null ? count : oldFilter.length;
+          }
+
+          @Override
+          public int getNewSize() {
+            return newFilter == null ? count : newFilter.length;
+          }
+
+          @Override
+          public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return compare(oldPosition, newPosition) == 0;
+          }
+
+          @Override
+          public int compare(int oldPosition, int newPosition) {
+            int oldKey = oldFilter == null ? oldPosition : oldFilter[oldPosition];
+            int newKey = newFilter == null ? newPosition : newFilter[newPosition];
+            return oldKey < newKey ? -1 : (oldKey == newKey ? 0 : 1);
+          }
+        });
+      }
+
+      @Override
+      public void onCalculated(ListDiff diff) {
+        filter = newFilter;
+        if (diff == null) {
+          notifyDataSetChanged();
+        } else {
+          diff.dispatchUpdatesTo(updateCallback);
+        }
+      }
+    });
+  }
+
+  void release() {
+    differ.release();
+    layoutCache.release();
+    data.setCallback(null);
+    data.release();
+  }
+}
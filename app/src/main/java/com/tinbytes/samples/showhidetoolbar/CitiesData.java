@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar;
+
+import com.tinbytes.samples.showhidetoolbar.util.PageLoader;
+import com.tinbytes.samples.showhidetoolbar.util.PagedDataSource;
+import com.tinbytes.samples.showhidetoolbar.util.Searcher;
+import com.tinbytes.samples.showhidetoolbar.util.SectionIndex;
+
+/**
+ * Everything built on the cities that outlives a configuration change: loaded pages, the adapter with its text
+ * layouts, the search and section indices, and the current query. It's handed over to the next activity through
+ * onRetainCustomNonConfigurationInstance(), so nothing in here may reference an Activity.
+ */
+final class CitiesData {
+  final PageLoader loader;
+  final CitiesAdapter adapter;
+  final Searcher searcher;
+  // Built in the background, null until then
+  SectionIndex sectionIndex;
+  // Query the list is filtered with, null if none
+  String query;
+
+  CitiesData(PageLoader loader) {
+    this.loader = loader;
+    adapter = new CitiesAdapter(new PagedDataSource(loader));
+    searcher = new Searcher(loader, new Searcher.Callback() {
+      @Override
+      public void onSearchResults(String query, int[] positions) {
+        adapter.setFilter(positions);
+      }
+    });
+  }
+
+  void search(String query) {
+    this.query = query.length() == 0 ? null : query;
+    searcher.search(query);
+  }
+
+  void release() {
+    searcher.release();
+    adapter.release();
+  }
+}
@@ -25,17 +25,16 @@ import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
-import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
-import android.view.View;
-import android.view.ViewGroup;
 import android.view.animation.LinearInterpolator;
-import android.widget.TextView;
 
 import com.tinbytes.samples.showhidetoolbar.util.AndroidUtils;
 import com.tinbytes.samples.showhidetoolbar.util.CityUtils;
 import com.tinbytes.samples.showhidetoolbar.util.HelpUtils;
+import com.tinbytes.samples.showhidetoolbar.util.PagedDataSource;
+import com.tinbytes.samples.showhidetoolbar.util.RecyclerViewUtils;
+import com.tinbytes.samples.showhidetoolbar.util.ViewHolderPool;
 
 public class MainActivity extends AppCompatActivity {
   // The elevation of the toolbar when content is scrolled behind
@@ -46,13 +45,19 @@ public class MainActivity extends AppCompatActivity {
   private static final String STATE_SCROLLING_OFFSET = "state-scrolling-direction";
   private static final String STATE_TOOLBAR_ELEVATION = "state-toolbar-elevation";
   private static final String STATE_TOOLBAR_TRANSLATION_Y = "state-toolbar-translation-y";
+  // Rows inflated ahead of time while the main thread is idle, about a screenful
+  private static final int PREWARMED_ROWS = 12;
 
   // We need a reference to the toolbar for hide/show animation
   private Toolbar tToolbar;
   // We need a reference to the recyclerview to save/restore its state
   private RecyclerView rvCities;
+  // Pages in the sample data, released with the activity
+  private CitiesAdapter citiesAdapter;
   // Keeps track of the overall vertical offset in the list
   private int verticalOffset;
+  // Sums up scroll deltas so we don't need computeVerticalScrollOffset() on every frame
+  private final RecyclerViewUtils.ScrollOffsetTracker offsetTracker = new RecyclerViewUtils.ScrollOffsetTracker();
   // Determines the scroll UP/DOWN offset
   private int scrollingOffset;
 
@@ -70,7 +75,11 @@ public class MainActivity extends AppCompatActivity {
     // RecyclerView with sample data
     rvCities = (RecyclerView) findViewById(R.id.rvCities);
     rvCities.setLayoutManager(new LinearLayoutManager(this));
-    rvCities.setAdapter(new CitiesAdapter(CityUtils.CITIES));
+    ViewHolderPool.getInstance().attach(rvCities);
+    citiesAdapter = new CitiesAdapter(new PagedDataSource(CityUtils.getCities(this)));
+    rvCities.setAdapter(citiesAdapter);
+    ViewHolderPool.getInstance().prewarm(rvCities, 0, PREWARMED_ROWS);
+    offsetTracker.attach(rvCities);
 
     if (savedInstanceState != null) {
       if (AndroidUtils.isLollipop()) {
@@ -105,7 +114,7 @@ public class MainActivity extends AppCompatActivity {
 
       @Override
       public final void onScrolled(RecyclerView recyclerView, int dx, int dy) {
-        verticalOffset = rvCities.computeVerticalScrollOffset();
+        verticalOffset = offsetTracker.onScrolled(dy);
         scrollingOffset = dy;
         int toolbarYOffset = (int) (dy - tToolbar.getTranslationY());
         tToolbar.animate().cancel();
@@ -183,6 +192,13 @@ public class MainActivity extends AppCompatActivity {
         });
   }
 
+  @Override
+  protected void onDestroy() {
+    ViewHolderPool.getInstance().detach(rvCities);
+    citiesAdapter.release();
+    super.onDestroy();
+  }
+
   @Override
   public boolean onCreateOptionsMenu(Menu menu) {
     getMenuInflater().inflate(R.menu.main_menu, menu);
@@ -198,39 +214,4 @@ public class MainActivity extends AppCompatActivity {
     }
     return super.onOptionsItemSelected(item);
   }
-
-  /**
-   * Cities adapter to hold sample data for our RecyclerView.
-   */
-  static class CitiesAdapter extends RecyclerView.Adapter<CitiesAdapter.ViewHolder> {
-    private String[] data;
-
-    static class ViewHolder extends RecyclerView.ViewHolder {
-      TextView tvName;
-
-      ViewHolder(View v) {
-        super(v);
-        tvName = (TextView) v.findViewById(R.id.tvName);
-      }
-    }
-
-    CitiesAdapter(String... data) {
-      this.data = data;
-    }
-
-    @Override
-    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-      return new ViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.city_item, parent, false));
-    }
-
-    @Override
-    public void onBindViewHolder(ViewHolder holder, int position) {
-      holder.tvName.setText(data[position]);
-    }
-
-    @Override
-    public int getItemCount() {
-      return data.length;
-    }
-  }
 }
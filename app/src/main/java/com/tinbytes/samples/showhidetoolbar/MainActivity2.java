@@ -17,60 +17,303 @@
 package com.tinbytes.samples.showhidetoolbar;
 
 import android.annotation.TargetApi;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
-import android.view.LayoutInflater;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.view.ViewGroup;
-import android.widget.TextView;
 
 import com.tinbytes.samples.showhidetoolbar.util.CityUtils;
 import com.tinbytes.samples.showhidetoolbar.util.HelpUtils;
+import com.tinbytes.samples.showhidetoolbar.util.ItemPrefetcher;
+import com.tinbytes.samples.showhidetoolbar.util.PageLoader;
 import com.tinbytes.samples.showhidetoolbar.util.RecyclerViewUtils;
+import com.tinbytes.samples.showhidetoolbar.util.RelayoutBenchmark;
+import com.tinbytes.samples.showhidetoolbar.util.RowHeightIndex;
+import com.tinbytes.samples.showhidetoolbar.util.ScrollMetrics;
+import com.tinbytes.samples.showhidetoolbar.util.SectionIndex;
+import com.tinbytes.samples.showhidetoolbar.util.StartupTracer;
+import com.tinbytes.samples.showhidetoolbar.util.ViewHolderPool;
+import com.tinbytes.samples.showhidetoolbar.widget.FastScroller;
+import com.tinbytes.samples.showhidetoolbar.widget.ToolbarListLayout;
+
+import java.io.File;
+import java.io.IOException;
 
 public class MainActivity2 extends AppCompatActivity {
+  private static final String TAG = "MainActivity2";
+
+  // Rows inflated ahead of time while the main thread is idle, about a screenful
+  private static final int PREWARMED_ROWS = 12;
+  // Loads the cities off the main thread so the first frame doesn't wait for them, the list fills in once ready
+  private static final boolean DEFERRED_INIT = true;
+  // Logs how long relaying out main_activity.xml takes against the RelativeLayout it replaced, once startup is done
+  private static final boolean RELAYOUT_BENCHMARK = false;
+  // Doesn't draw the rows behind the toolbar, turn it off to compare overdraw ("Debug GPU overdraw") without it
+  private static final boolean CLIP_UNDER_TOOLBAR = true;
+  // Slides the toolbar as a hardware layer while it animates, turn it off to compare frame timing without it
+  private static final boolean HARDWARE_LAYER_ANIMATIONS = true;
+  // Logs frame timing while scrolling or animating the toolbar when destroyed, along with the modes above
+  private static final boolean SCROLL_METRICS = false;
+  // Startup timeline, appended to this file in the app's files dir
+  private static final String STARTUP_TRACE_FILE = "startup_trace.txt";
+
   // We need a reference to save/restore its state
   private RecyclerViewUtils.ShowHideToolbarOnScrollingListener showHideToolbarListener;
+  // Gives its rows back to the shared pool when destroyed
+  private RecyclerView rvCities;
+  // Adapter, search and section indices, retained across configuration changes and released with the activity
+  // otherwise
+  private CitiesData cities;
+  // Builds the section index to jump to the first city of a letter
+  private AsyncTask<Void, Void, SectionIndex> sectionIndexTask;
+  private FastScroller fsCities;
+  // Loads the cities when DEFERRED_INIT is on
+  private AsyncTask<Void, Void, PageLoader> citiesTask;
+  // Where startup time goes, the first frame and the data being shown are the steps we wait for
+  private StartupTracer startupTracer;
+  private int pendingStartupSteps = 2;
+  // Prepares upcoming rows while scrolling, its hit rate is logged when destroyed
+  private ItemPrefetcher itemPrefetcher;
+  // Frame timing when SCROLL_METRICS is on, null otherwise
+  private ScrollMetrics scrollMetrics;
 
   @TargetApi(Build.VERSION_CODES.LOLLIPOP)
   @Override
   protected void onCreate(Bundle savedInstanceState) {
+    startupTracer = new StartupTracer();
+    startupTracer.begin("onCreate");
     super.onCreate(savedInstanceState);
+    startupTracer.begin("inflate layout");
     setContentView(R.layout.main_activity);
+    startupTracer.end("inflate layout");
+    startupTracer.watchFirstFrame(getWindow().getDecorView(), new Runnable() {
+      @Override
+      public void run() {
+        onStartupStepDone();
+      }
+    });
 
     // Assign Toolbar to the activity
-    Toolbar tToolbar = (Toolbar) findViewById(R.id.tToolbar);
+    ToolbarListLayout tllContent = (ToolbarListLayout) findViewById(R.id.tllContent);
+    Toolbar tToolbar = tllContent.getToolbar();
+    // Rows behind the toolbar are painted over anyway, don't draw them
+    tllContent.setClipUnderToolbar(CLIP_UNDER_TOOLBAR);
     setSupportActionBar(tToolbar);
     getSupportActionBar().setTitle(R.string.app_name);
 
-    // RecyclerView with sample data
-    RecyclerView rvCities = (RecyclerView) findViewById(R.id.rvCities);
+    // RecyclerView, the sample data is plugged in by onCitiesLoaded()
+    rvCities = (RecyclerView) findViewById(R.id.rvCities);
     rvCities.setLayoutManager(new LinearLayoutManager(this));
-    rvCities.setAdapter(new CitiesAdapter(CityUtils.CITIES));
-    rvCities.addOnScrollListener(showHideToolbarListener = new RecyclerViewUtils.ShowHideToolbarOnScrollingListener(tToolbar));
+    ViewHolderPool.getInstance().attach(rvCities);
+    // Rows rebind in place when their page arrives, no cross-fade between an old and a new ViewHolder
+    rvCities.getItemAnimator().setSupportsChangeAnimations(false);
+    rvCities.addOnScrollListener(showHideToolbarListener = new RecyclerViewUtils.ShowHideToolbarOnScrollingListener(tllContent));
+    // Settle the toolbar while flinging rather than after the list stops
+    showHideToolbarListener.setFlingPrediction(true);
+    // The toolbar's title and menu don't change while it slides, move it as a layer
+    showHideToolbarListener.setHardwareLayerAnimations(HARDWARE_LAYER_ANIMATIONS);
+    if (SCROLL_METRICS) {
+      showHideToolbarListener.setScrollMetrics(scrollMetrics = new ScrollMetrics());
+    }
+    // Fade a shadow in and out rather than toggling the toolbar's elevation, the same on every API level
+    tllContent.setToolbarShadow(getResources().getDrawable(R.drawable.toolbar_shadow));
+    showHideToolbarListener.setShadowView(tllContent.getToolbarShadow());
+    // Exact offsets even if rows end up with different heights, e.g. long names wrapping
+    showHideToolbarListener.setRowHeightIndex(new RowHeightIndex());
+    // Rows coming into view have their data and text layouts ready ahead of time
+    rvCities.addOnScrollListener(itemPrefetcher = new ItemPrefetcher(rvCities, 0));
+
+    // Fast-scroll through the alphabetical sections
+    fsCities = (FastScroller) findViewById(R.id.fsCities);
+    fsCities.attachToRecyclerView(rvCities);
+    fsCities.setCallback(new FastScroller.Callback() {
+      @Override
+      public void onSectionSelected(int section) {
+        int position = cities.adapter.getAdapterPosition(cities.sectionIndex.getPosition(section));
+        ((LinearLayoutManager) rvCities.getLayoutManager()).scrollToPositionWithOffset(position, 0);
+        // The list jumps without scrolling, so put the toolbar where it would end up
+        showHideToolbarListener.snapToolbar(position > 0);
+      }
+    });
 
     if (savedInstanceState != null) {
-      showHideToolbarListener.onRestoreInstanceState((RecyclerViewUtils.ShowHideToolbarOnScrollingListener.State) savedInstanceState
+      showHideToolbarListener.onRestoreInstanceState(rvCities, (RecyclerViewUtils.ShowHideToolbarOnScrollingListener.State) savedInstanceState
           .getParcelable(RecyclerViewUtils.ShowHideToolbarOnScrollingListener.SHOW_HIDE_TOOLBAR_LISTENER_STATE));
     }
+
+    CitiesData retained = (CitiesData) getLastCustomNonConfigurationInstance();
+    if (retained != null) {
+      // Rotated or similar, the data and everything built on it are still there
+      startupTracer.begin("reuse retained data");
+      onCitiesReady(retained, false);
+      startupTracer.end("reuse retained data");
+    } else if (DEFERRED_INIT) {
+      citiesTask = new AsyncTask<Void, Void, PageLoader>() {
+        @Override
+        protected PageLoader doInBackground(Void... params) {
+          startupTracer.begin("load data");
+          PageLoader citiesLoader = CityUtils.getCities(MainActivity2.this);
+          startupTracer.end("load data");
+          return citiesLoader;
+        }
+
+        @Override
+        protected void onPostExecute(PageLoader citiesLoader) {
+          onCitiesLoaded(citiesLoader);
+        }
+      }.execute();
+    } else {
+      startupTracer.begin("load data");
+      PageLoader citiesLoader = CityUtils.getCities(this);
+      startupTracer.end("load data");
+      onCitiesLoaded(citiesLoader);
+    }
+    startupTracer.end("onCreate");
+  }
+
+  /**
+   * Builds everything on top of freshly loaded cities and shows them.
+   */
+  private void onCitiesLoaded(PageLoader citiesLoader) {
+    startupTracer.begin("create adapter");
+    CitiesData data = new CitiesData(citiesLoader);
+    startupTracer.end("create adapter");
+    onCitiesReady(data, true);
+  }
+
+  /**
+   * Shows the cities and sets up whatever isn't built yet. The shared pool is only pre-warmed for new data, rows
+   * given back by a previous activity are already there.
+   */
+  private void onCitiesReady(final CitiesData data, boolean prewarm) {
+    cities = data;
+    rvCities.setAdapter(data.adapter);
+    if (prewarm) {
+      ViewHolderPool.getInstance().prewarm(rvCities, 0, PREWARMED_ROWS);
+    }
+    if (data.sectionIndex != null) {
+      setSections(data.sectionIndex);
+    } else {
+      sectionIndexTask = new AsyncTask<Void, Void, SectionIndex>() {
+        @Override
+        protected SectionIndex doInBackground(Void... params) {
+          return SectionIndex.build(data.loader);
+        }
+
+        @Override
+        protected void onPostExecute(SectionIndex result) {
+          data.sectionIndex = result;
+          setSections(result);
+        }
+      }.execute();
+    }
+    onStartupStepDone();
+  }
+
+  private void setSections(SectionIndex sectionIndex) {
+    String[] labels = new String[sectionIndex.getSectionCount()];
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = sectionIndex.getLabel(i);
+    }
+    fsCities.setSections(labels);
+  }
+
+  @Override
+  public Object onRetainCustomNonConfigurationInstance() {
+    return cities;
+  }
+
+  /**
+   * Writes the startup timeline once both the first frame is drawn and the data is shown.
+   */
+  private void onStartupStepDone() {
+    if (--pendingStartupSteps > 0) {
+      return;
+    }
+    final File traceFile = new File(getFilesDir(), STARTUP_TRACE_FILE);
+    AsyncTask.execute(new Runnable() {
+      @Override
+      public void run() {
+        startupTracer.dumpToLog();
+        try {
+          startupTracer.dumpToFile(traceFile);
+        } catch (IOException e) {
+          Log.w(TAG, "Unable to write " + traceFile, e);
+        }
+      }
+    });
+    if (RELAYOUT_BENCHMARK) {
+      View content = findViewById(R.id.tllContent);
+      RelayoutBenchmark.logComparison(this, content.getWidth(), content.getHeight(), R.layout.main_activity_relative,
+          R.layout.main_activity);
+    }
   }
 
   @Override
   public void onSaveInstanceState(Bundle outState) {
     outState.putParcelable(RecyclerViewUtils.ShowHideToolbarOnScrollingListener.SHOW_HIDE_TOOLBAR_LISTENER_STATE,
-        showHideToolbarListener.onSaveInstanceState());
+        showHideToolbarListener.onSaveInstanceState(rvCities));
     super.onSaveInstanceState(outState);
   }
 
+  @Override
+  protected void onDestroy() {
+    ViewHolderPool.getInstance().detach(rvCities);
+    showHideToolbarListener.detach();
+    itemPrefetcher.dumpToLog();
+    if (scrollMetrics != null) {
+      showHideToolbarListener.setScrollMetrics(null);
+      Log.i(TAG, "Scroll metrics with hardwareLayerAnimations=" + HARDWARE_LAYER_ANIMATIONS + " clipUnderToolbar="
+          + CLIP_UNDER_TOOLBAR);
+      scrollMetrics.dumpToLog();
+    }
+    if (citiesTask != null) {
+      citiesTask.cancel(false);
+    }
+    if (sectionIndexTask != null) {
+      sectionIndexTask.cancel(false);
+    }
+    // Handed over to the next activity when changing configuration
+    if (cities != null && !isChangingConfigurations()) {
+      cities.release();
+    }
+    super.onDestroy();
+  }
+
   @Override
   public boolean onCreateOptionsMenu(Menu menu) {
+    getMenuInflater().inflate(R.menu.search_menu, menu);
     getMenuInflater().inflate(R.menu.main_menu, menu);
+    MenuItem searchItem = menu.findItem(R.id.action_search);
+    SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+    if (cities != null && cities.query != null) {
+      // The retained list is still filtered, show what with
+      MenuItemCompat.expandActionView(searchItem);
+      searchView.setQuery(cities.query, false);
+    }
+    searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+      @Override
+      public boolean onQueryTextSubmit(String query) {
+        return false;
+      }
+
+      @Override
+      public boolean onQueryTextChange(String newText) {
+        if (cities != null) {
+          cities.search(newText);
+        }
+        return true;
+      }
+    });
     return true;
   }
 
@@ -83,39 +326,4 @@ public class MainActivity2 extends AppCompatActivity {
     }
     return super.onOptionsItemSelected(item);
   }
-
-  /**
-   * Cities adapter to hold sample data for our RecyclerView.
-   */
-  static class CitiesAdapter extends RecyclerView.Adapter<CitiesAdapter.ViewHolder> {
-    private String[] data;
-
-    static class ViewHolder extends RecyclerView.ViewHolder {
-      TextView tvName;
-
-      ViewHolder(View v) {
-        super(v);
-        tvName = (TextView) v.findViewById(R.id.tvName);
-      }
-    }
-
-    CitiesAdapter(String... data) {
-      this.data = data;
-    }
-
-    @Override
-    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-      return new ViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.city_item, parent, false));
-    }
-
-    @Override
-    public void onBindViewHolder(ViewHolder holder, int position) {
-      holder.tvName.setText(data[position]);
-    }
-
-    @Override
-    public int getItemCount() {
-      return data.length;
-    }
-  }
 }
@@ -19,6 +19,10 @@ package com.tinbytes.samples.showhidetoolbar.util;
 import android.os.Build;
 
 public final class AndroidUtils {
+  public static boolean isJellyBean() {
+    return android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+  }
+
   public static boolean isLollipop() {
     return android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
   }
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.View;
+
+/**
+ * Item prefetch for RecyclerViews that don't have one (recyclerview-v7 22.2). While the list scrolls, rows about to
+ * come into view are prepared in the main thread's idle time between frames, so the frame they show up in only has
+ * to do a cheap bind:
+ * <ul>
+ * <li>the adapter prepares their data, see Prefetchable</li>
+ * <li>if rows had to be inflated on demand, spare holders are created into the shared ViewHolderPool</li>
+ * </ul>
+ * Rows are looked ahead in the scrolling direction, further the faster the list goes. Only vertical
+ * LinearLayoutManagers are supported. Main thread only.
+ */
+public final class ItemPrefetcher extends RecyclerView.OnScrollListener {
+  private static final String TAG = "ItemPrefetcher";
+
+  public static final int DEFAULT_LOOKAHEAD = 4;
+  // Frames worth of scrolling looked ahead on top of the lookahead, and the cap on the total
+  private static final int VELOCITY_FRAMES = 4;
+  private static final int MAX_LOOKAHEAD_FACTOR = 4;
+
+  /**
+   * Implemented by adapters that can prepare a row ahead of binding it, e.g. load its data or measure its text.
+   * Must be cheap, heavy work belongs on a background thread.
+   */
+  public interface Prefetchable {
+    void prefetch(int position);
+  }
+
+  private final RecyclerView recyclerView;
+  private final int viewType;
+  private int lookahead;
+  // Rows prefetched for the current direction, [prefetchedStart, prefetchedEnd)
+  private int prefetchedStart;
+  private int prefetchedEnd;
+  // Visible rows as of the last scroll step, to tell which rows just came into view
+  private int firstVisible = RecyclerView.NO_POSITION;
+  private int lastVisible = RecyclerView.NO_POSITION;
+  // Pending prefetch request
+  private int direction;
+  private int target;
+  private boolean scheduled;
+  // On demand creations seen so far, more of them means the pool ran dry
+  private int holdersCreated = ViewHolderPool.getInstance().getCreatedCount();
+  private int hits;
+  private int misses;
+  private int rowsPrefetched;
+  private int holdersRequested;
+
+  private final MessageQueue.IdleHandler idleHandler = new MessageQueue.IdleHandler() {
+    @Override
+    public boolean queueIdle() {
+      scheduled = false;
+      prefetch();
+      return false;
+    }
+  };
+
+  public ItemPrefetcher(RecyclerView recyclerView, int viewType) {
+    this(recyclerView, viewType, DEFAULT_LOOKAHEAD);
+  }
+
+  /**
+   * Prefetches rows of viewType, at least lookahead of them past the edge of the list.
+   */
+  public ItemPrefetcher(RecyclerView recyclerView, int viewType, int lookahead) {
+    this.recyclerView = recyclerView;
+    this.viewType = viewType;
+    this.lookahead = lookahead;
+  }
+
+  public void setLookahead(int lookahead) {
+    this.lookahead = lookahead;
+  }
+
+  @Override
+  public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+    if (!(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+      return;
+    }
+    LinearLayoutManager lm = (LinearLayoutManager) recyclerView.getLayoutManager();
+    int first = lm.findFirstVisibleItemPosition();
+    int last = lm.findLastVisibleItemPosition();
+    countNewRows(first, last);
+    if (dy == 0 || first == RecyclerView.NO_POSITION) {
+      // Layout passes report no scroll, positions may have changed so start over
+      direction = 0;
+      return;
+    }
+
+    // Rows scrolled per frame at this speed, from the height of a row on screen
+    View child = lm.getChildAt(0);
+    int rowHeight = child != null ? Math.max(1, child.getHeight()) : Integer.MAX_VALUE;
+    int rows = Math.min(lookahead + VELOCITY_FRAMES * Math.abs(dy) / rowHeight, lookahead * MAX_LOOKAHEAD_FACTOR);
+    int newDirection = dy > 0 ? 1 : -1;
+    if (newDirection != direction
+        || (newDirection > 0 ? prefetchedEnd <= last : prefetchedStart > first)) {
+      // Turned around or outran the prefetched rows, what was prefetched is behind us now
+      direction = newDirection;
+      prefetchedStart = prefetchedEnd = direction > 0 ? last + 1 : first;
+    }
+    target = direction > 0 ? Math.min(last + 1 + rows, lm.getItemCount()) : Math.max(first - rows, 0);
+    if (!scheduled) {
+      scheduled = true;
+      Looper.myQueue().addIdleHandler(idleHandler);
+    }
+  }
+
+  /**
+   * Counts the rows that just came into view as hits or misses depending on whether they had been prefetched.
+   */
+  private void countNewRows(int first, int last) {
+    if (first != RecyclerView.NO_POSITION && lastVisible != RecyclerView.NO_POSITION) {
+      for (int position = Math.max(first, lastVisible + 1); position <= last; position++) {
+        countRow(position);
+      }
+      for (int position = Math.min(last, firstVisible - 1); position >= first; position--) {
+        countRow(position);
+      }
+    }
+    firstVisible = first;
+    lastVisible = last;
+  }
+
+  private void countRow(int position) {
+    if (position >= prefetchedStart && position < prefetchedEnd) {
+      hits++;
+    } else {
+      misses++;
+    }
+  }
+
+  private void prefetch() {
+    RecyclerView.Adapter adapter = recyclerView.getAdapter();
+    if (!(adapter instanceof Prefetchable) || direction == 0) {
+      return;
+    }
+    Prefetchable prefetchable = (Prefetchable) adapter;
+    if (direction > 0) {
+      for (; prefetchedEnd < target; prefetchedEnd++) {
+        prefetchable.prefetch(prefetchedEnd);
+        rowsPrefetched++;
+      }
+    } else {
+      while (prefetchedStart > target) {
+        prefetchable.prefetch(--prefetchedStart);
+        rowsPrefetched++;
+      }
+    }
+
+    // Holders inflated on demand since last time mean the pool can't keep up, top it up for the rows ahead
+    ViewHolderPool pool = ViewHolderPool.getInstance();
+    if (pool.getCreatedCount() > holdersCreated) {
+      holdersCreated = pool.getCreatedCount();
+      pool.prewarm(recyclerView, viewType, lookahead);
+      holdersRequested += lookahead;
+    }
+  }
+
+  /**
+   * Rows that came into view already prefetched.
+   */
+  public int getHits() {
+    return hits;
+  }
+
+  /**
+   * Rows that came into view without having been prefetched.
+   */
+  public int getMisses() {
+    return misses;
+  }
+
+  public void dumpToLog() {
+    Log.i(TAG, "hits=" + hits + " misses=" + misses + " rowsPrefetched=" + rowsPrefetched
+        + " holdersRequested=" + holdersRequested);
+  }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import java.util.Arrays;
+
+/**
+ * Minimal list of insert/remove/move operations turning an old snapshot of a list into a new one. It's meant to be
+ * computed on a worker thread and then dispatched as granular adapter notifications on the main thread, so updates
+ * cost time proportional to what changed.
+ * <p/>
+ * compute() uses Myers' algorithm after trimming the common prefix/suffix, and gives up (returns null) beyond
+ * maxEdits so huge changes fall back to a full refresh. computeSorted() handles snapshots ordered by the same key
+ * with a linear merge, and gives up past maxEdits the same way. Plain Java, no Android dependencies.
+ */
+public final class ListDiff {
+  public static final int DEFAULT_MAX_EDITS = 1000;
+
+  private static final int OP_INSERT = 0;
+  private static final int OP_REMOVE = 1;
+  private static final int OP_MOVE = 2;
+
+  // Edit script entries, in old/new snapshot coordinates
+  private static final int EDIT_INSERT = 0;
+  private static final int EDIT_REMOVE = 1;
+
+  /**
+   * Gives access to both snapshots.
+   */
+  public interface Callback {
+    int getOldSize();
+
+    int getNewSize();
+
+    boolean areItemsTheSame(int oldPosition, int newPosition);
+  }
+
+  /**
+   * Snapshots whose items are strictly ascending by some key, like filtered positions of the same dataset.
+   */
+  public interface SortedCallback extends Callback {
+    /**
+     * Compares the keys of an old and a new item, like Comparator#compare().
+     */
+    int compare(int oldPosition, int newPosition);
+  }
+
+  /**
+   * Receives the operations in the order they must be applied, like RecyclerView.Adapter notifications.
+   */
+  public interface UpdateCallback {
+    void onInserted(int position, int count);
+
+    void onRemoved(int position, int count);
+
+    void onMoved(int fromPosition, int toPosition);
+  }
+
+  // Operations as (type, a, b) triples
+  private final int[] ops;
+
+  private ListDiff(int[] ops) {
+    this.ops = ops;
+  }
+
+  public static ListDiff compute(Callback callback, boolean detectMoves) {
+    return compute(callback, detectMoves, DEFAULT_MAX_EDITS);
+  }
+
+  /**
+   * Returns the operations between both snapshots, or null if they need more than maxEdits inserts/removes.
+   */
+  public static ListDiff compute(Callback callback, boolean detectMoves, int maxEdits) {
+    int oldSize = callback.getOldSize();
+    int newSize = callback.getNewSize();
+    int prefix = 0;
+    while (prefix < oldSize && prefix < newSize && callback.areItemsTheSame(prefix, prefix)) {
+      prefix++;
+    }
+    int suffix = 0;
+    while (suffix < oldSize - prefix && suffix < newSize - prefix
+        && callback.areItemsTheSame(oldSize - 1 - suffix, newSize - 1 - suffix)) {
+      suffix++;
+    }
+    int[] edits = myers(callback, prefix, oldSize - suffix, prefix, newSize - suffix, maxEdits);
+    if (edits == null) {
+      return null;
+    }
+    if (detectMoves) {
+      return new ListDiff(buildOpsWithMoves(callback, edits, prefix, oldSize - suffix, newSize - suffix));
+    }
+    return new ListDiff(buildOps(edits));
+  }
+
+  public static ListDiff computeSorted(SortedCallback callback) {
+    return computeSorted(callback, DEFAULT_MAX_EDITS);
+  }
+
+  /**
+   * Merges two ascending snapshots. For them the items present in both are the longest common subsequence, so the
+   * result is minimal and takes linear time. There are no moves in sorted lists. Returns null if they need more
+   * than maxEdits inserts/removes.
+   */
+  public static ListDiff computeSorted(SortedCallback callback, int maxEdits) {
+    int oldSize = callback.getOldSize();
+    int newSize = callback.getNewSize();
+    // The size difference alone takes that many edits
+    if (Math.abs(oldSize - newSize) > maxEdits) {
+      return null;
+    }
+    IntList edits = new IntList();
+    int x = 0;
+    int y = 0;
+    while (x < oldSize || y < newSize) {
+      int cmp = x == oldSize ? 1 : y == newSize ? -1 : callback.compare(x, y);
+      if (cmp < 0) {
+        edits.add(EDIT_REMOVE, x++, y);
+      } else if (cmp > 0) {
+        edits.add(EDIT_INSERT, x, y++);
+      } else {
+        x++;
+        y++;
+      }
+      if (edits.size / 3 > maxEdits) {
+        return null;
+      }
+    }
+    return new ListDiff(buildOps(edits.toArray()));
+  }
+
+  /**
+   * Myers' greedy forward search over old[oldStart, oldEnd) and new[newStart, newEnd), keeping a trace of every
+   * step to rebuild the edit script. Returns the edits in forward order, or null past maxEdits.
+   */
+  private static int[] myers(Callback callback, int oldStart, int oldEnd, int newStart, int newEnd, int maxEdits) {
+    int n = oldEnd - oldStart;
+    int m = newEnd - newStart;
+    int max = Math.min(n + m, maxEdits);
+    int offset = max + 1;
+    int[] v = new int[2 * max + 3];
+    int[][] trace = new int[max + 1][];
+    int found = -1;
+    for (int d = 0; d <= max && found < 0; d++) {
+      for (int k = -d; k <= d; k += 2) {
+        int x;
+        if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+          x = v[offset + k + 1];
+        } else {
+          x = v[offset + k - 1] + 1;
+        }
+        int y = x - k;
+        while (x < n && y < m && callback.areItemsTheSame(oldStart + x, newStart + y)) {
+          x++;
+          y++;
+        }
+        v[offset + k] = x;
+        if (x >= n && y >= m) {
+          found = d;
+          break;
+        }
+      }
+      trace[d] = Arrays.copyOfRange(v, offset - d, offset + d + 1);
+    }
+    if (found < 0) {
+      return null;
+    }
+
+    // Walk back from the end, each step is one insert or remove
+    IntList edits = new IntList();
+    int x = n;
+    int y = m;
+    for (int d = found; d > 0; d--) {
+      int[] prev = trace[d - 1];
+      int k = x - y;
+      int prevK;
+      if (k == -d || (k != d && prev[k - 1 + d - 1] < prev[k + 1 + d - 1])) {
+        prevK = k + 1;
+      } else {
+        prevK = k - 1;
+      }
+      int prevX = prev[prevK + d - 1];
+      int prevY = prevX - prevK;
+      if (prevK == k + 1) {
+        edits.add(EDIT_INSERT, oldStart + prevX, newStart + prevY);
+      } else {
+        edits.add(EDIT_REMOVE, oldStart + prevX, newStart + prevY);
+      }
+      x = prevX;
+      y = prevY;
+    }
+    return edits.reversed();
+  }
+
+  /**
+   * Turns forward edits into adapter operations. Edits are applied from the end of the list so earlier positions
+   * still match the old snapshot, consecutive edits are merged into ranges.
+   */
+  private static int[] buildOps(int[] edits) {
+    IntList ops = new IntList();
+    int type = -1;
+    int position = 0;
+    int count = 0;
+    for (int i = edits.length - 3; i >= 0; i -= 3) {
+      int edit = edits[i];
+      int x = edits[i + 1];
+      if (edit == EDIT_REMOVE) {
+        if (type == OP_REMOVE && position == x + 1) {
+          position = x;
+          count++;
+          continue;
+        }
+        flush(ops, type, position, count);
+        type = OP_REMOVE;
+        position = x;
+        count = 1;
+      } else {
+        if (type == OP_INSERT && position == x) {
+          count++;
+          continue;
+        }
+        flush(ops, type, position, count);
+        type = OP_INSERT;
+        position = x;
+        count = 1;
+      }
+    }
+    flush(ops, type, position, count);
+    return ops.toArray();
+  }
+
+  private static void flush(IntList ops, int type, int position, int count) {
+    if (type >= 0) {
+      ops.add(type, position, count);
+    }
+  }
+
+  /**
+   * Like buildOps(), but a removed item that's inserted back somewhere else becomes a move. The list is simulated
+   * over the changed window to know the positions of the moves, so this costs more and is meant for small windows.
+   */
+  private static int[] buildOpsWithMoves(Callback callback, int[] edits, int start, int oldEnd, int newEnd) {
+    // Pair removed and inserted items
+    int editCount = edits.length / 3;
+    int[] movedTo = new int[editCount];
+    Arrays.fill(movedTo, -1);
+    boolean[] paired = new boolean[editCount];
+    boolean anyMove = false;
+    for (int i = 0; i < editCount; i++) {
+      if (edits[i * 3] != EDIT_REMOVE) {
+        continue;
+      }
+      for (int j = 0; j < editCount; j++) {
+        if (edits[j * 3] == EDIT_INSERT && !paired[j] && callback.areItemsTheSame(edits[i * 3 + 1], edits[j * 3 + 2])) {
+          movedTo[i] = j;
+          paired[j] = true;
+          anyMove = true;
+          break;
+        }
+      }
+    }
+    if (!anyMove) {
+      return buildOps(edits);
+    }
+
+    // Old items in the window, removed ones without a pair go first
+    int[] current = new int[oldEnd - start + editCount];
+    int size = 0;
+    for (int x = start; x < oldEnd; x++) {
+      current[size++] = x;
+    }
+    IntList removals = new IntList();
+    for (int i = 0; i < editCount; i++) {
+      if (edits[i * 3] == EDIT_REMOVE && movedTo[i] < 0) {
+        removals.add(EDIT_REMOVE, edits[i * 3 + 1], 0);
+      }
+    }
+    int[] ops = buildOps(removals.toArray());
+    IntList result = new IntList();
+    result.addAll(ops);
+    for (int i = 0; i < ops.length; i += 3) {
+      int from = ops[i + 1] - start;
+      int count = ops[i + 2];
+      System.arraycopy(current, from + count, current, from, size - from - count);
+      size -= count;
+    }
+
+    // Then every new position is filled in order, the kept items only move if a pending move sits before them
+    int[] insertedAt = new int[newEnd - start];
+    Arrays.fill(insertedAt, -1);
+    for (int j = 0; j < editCount; j++) {
+      if (edits[j * 3] == EDIT_INSERT) {
+        insertedAt[edits[j * 3 + 2] - start] = j;
+      }
+    }
+    int[] movedFrom = new int[editCount];
+    Arrays.fill(movedFrom, -1);
+    for (int i = 0; i < editCount; i++) {
+      if (movedTo[i] >= 0) {
+        movedFrom[movedTo[i]] = edits[i * 3 + 1];
+      }
+    }
+    // Old position of each kept new item, walking the path of the edit script
+    int[] keptFrom = new int[newEnd - start];
+    int x = start;
+    int y = start;
+    int e = 0;
+    while (y < newEnd) {
+      if (e < editCount && edits[e * 3 + 1] == x && edits[e * 3 + 2] == y) {
+        if (edits[e * 3] == EDIT_REMOVE) {
+          x++;
+        } else {
+          keptFrom[y++ - start] = -1;
+        }
+        e++;
+      } else {
+        keptFrom[y++ - start] = x++;
+      }
+    }
+    for (y = start; y < newEnd; y++) {
+      int pos = y - start;
+      int j = insertedAt[pos];
+      int oldItem;
+      if (j >= 0 && movedFrom[j] < 0) {
+        System.arraycopy(current, pos, current, pos + 1, size - pos);
+        current[pos] = -1;
+        size++;
+        result.add(OP_INSERT, y, 1);
+        continue;
+      }
+      oldItem = j >= 0 ? movedFrom[j] : keptFrom[pos];
+      if (current[pos] != oldItem) {
+        int from = pos + 1;
+        while (current[from] != oldItem) {
+          from++;
+        }
+        System.arraycopy(current, pos, current, pos + 1, from - pos);
+        current[pos] = oldItem;
+        result.add(OP_MOVE, start + from, y);
+      }
+    }
+    return result.toArray();
+  }
+
+  public boolean isEmpty() {
+    return ops.length == 0;
+  }
+
+  public void dispatchUpdatesTo(UpdateCallback callback) {
+    for (int i = 0; i < ops.length; i += 3) {
+      switch (ops[i]) {
+        case OP_INSERT:
+          callback.onInserted(ops[i + 1], ops[i + 2]);
+          break;
+        case OP_REMOVE:
+          callback.onRemoved(ops[i + 1], ops[i + 2]);
+          break;
+        case OP_MOVE:
+          callback.onMoved(ops[i + 1], ops[i + 2]);
+          break;
+      }
+    }
+  }
+
+  /**
+   * Growable list of int triples.
+   */
+  private static final class IntList {
+    int[] values = new int[48];
+    int size;
+
+    void add(int a, int b, int c) {
+      if (size + 3 > values.length) {
+        values = Arrays.copyOf(values, values.length * 2);
+      }
+      values[size++] = a;
+      values[size++] = b;
+      values[size++] = c;
+    }
+
+    void addAll(int[] triples) {
+      for (int i = 0; i < triples.length; i += 3) {
+        add(triples[i], triples[i + 1], triples[i + 2]);
+      }
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+
+    int[] reversed() {
+      int[] reversed = new int[size];
+      for (int i = 0; i < size; i += 3) {
+        System.arraycopy(values, i, reversed, size - 3 - i, 3);
+      }
+      return reversed;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Calculates ListDiffs on a worker thread and hands them back on the main thread. Only the latest submitted task
+ * is delivered, older ones still in flight are dropped.
+ */
+public final class ListDiffer {
+  public interface Task {
+    /**
+     * Called on the worker thread.
+     */
+    ListDiff calculate();
+
+    /**
+     * Called on the main thread. diff is null when there were too many changes for granular updates.
+     */
+    void onCalculated(ListDiff diff);
+  }
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  // Bumped on every submit so stale results are dropped
+  private volatile int generation;
+
+  public void submit(final Task task) {
+    final int generation = ++this.generation;
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (generation != ListDiffer.this.generation) {
+          // Superseded before it even started, not worth computing
+          return;
+        }
+        final ListDiff diff = task.calculate();
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            if (generation == ListDiffer.this.generation) {
+              task.onCalculated(diff);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  public void release() {
+    generation++;
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Read-only list of strings stored as a single UTF-8 blob plus an offset table, read straight from a memory-mapped
+ * file so nothing but the rows actually asked for ends up on the heap.
+ * <p/>
+ * Format, big-endian: the int MAGIC, the int count, count + 1 int offsets into the blob (the last one is the blob
+ * length) and then the blob itself. The app's build packs src/main/data/*.txt files (one string per line) into this
+ * format, see packData in app/build.gradle.
+ * <p/>
+ * Reads don't touch the shared buffer's position, so a table can be used from several threads at once.
+ */
+public final class PackedStringTable implements PageLoader {
+  // "PST1"
+  public static final int MAGIC = 0x50535431;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int HEADER_SIZE = 8;
+
+  private final ByteBuffer buffer;
+  private final int count;
+  // Where the blob starts in the buffer
+  private final int blobStart;
+
+  /**
+   * Wraps a buffer holding a packed table, e.g. a file mapped elsewhere.
+   */
+  public PackedStringTable(ByteBuffer buffer) {
+    this.buffer = buffer;
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not a packed string table");
+    }
+    count = buffer.getInt(4);
+    blobStart = HEADER_SIZE + (count + 1) * 4;
+    if (count < 0 || count >= (buffer.capacity() - HEADER_SIZE) / 4
+        || blobStart + offset(count) > buffer.capacity()) {
+      throw new IllegalArgumentException("Truncated packed string table");
+    }
+  }
+
+  /**
+   * Maps a packed table stored as an asset. The asset must be stored uncompressed in the APK (aaptOptions
+   * noCompress) for it to be mapped.
+   */
+  public static PackedStringTable fromAsset(AssetManager assets, String name) throws IOException {
+    AssetFileDescriptor afd = assets.openFd(name);
+    try {
+      FileInputStream in = afd.createInputStream();
+      try {
+        // The mapping stays valid once the channel is closed
+        return new PackedStringTable(in.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(),
+            afd.getLength()));
+      } finally {
+        in.close();
+      }
+    } finally {
+      afd.close();
+    }
+  }
+
+  @Override
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Decodes the string at position.
+   */
+  public String get(int position) {
+    if (position < 0 || position >= count) {
+      throw new IndexOutOfBoundsException("Position " + position + ", count " + count);
+    }
+    return decode(buffer.duplicate(), new byte[0], position);
+  }
+
+  @Override
+  public String[] loadPage(int start, int count) {
+    String[] page = new String[count];
+    // A private view, so reading doesn't move the shared buffer's position
+    ByteBuffer view = buffer.duplicate();
+    byte[] scratch = new byte[64];
+    for (int i = 0; i < count; i++) {
+      page[i] = decode(view, scratch, start + i);
+    }
+    return page;
+  }
+
+  /**
+   * Decodes the string at position through view, using scratch as the byte buffer if it's big enough.
+   */
+  private String decode(ByteBuffer view, byte[] scratch, int position) {
+    int from = offset(position);
+    int length = offset(position + 1) - from;
+    byte[] bytes = scratch.length >= length ? scratch : new byte[length];
+    view.position(blobStart + from);
+    view.get(bytes, 0, length);
+    return new String(bytes, 0, length, UTF_8);
+  }
+
+  private int offset(int index) {
+    return buffer.getInt(HEADER_SIZE + index * 4);
+  }
+}
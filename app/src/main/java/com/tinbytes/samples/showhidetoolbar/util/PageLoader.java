@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+/**
+ * Provides the actual data of a PagedDataSource, and what the search and section indices are built from.
+ * Plain Java, no Android dependencies.
+ */
+public interface PageLoader {
+  int getCount();
+
+  /**
+   * Loads count items starting at start. Called on a background thread.
+   */
+  String[] loadPage(int start, int count);
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseBooleanArray;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Read-only list of strings loaded in fixed-size pages on a background thread. Only a bounded number of pages is
+ * kept in memory (least recently used pages are dropped), so memory stays flat no matter how big the dataset is.
+ * Rows whose page isn't loaded yet are reported as null, the caller shows a placeholder and gets notified through
+ * the Callback once the page arrives.
+ * <p/>
+ * Pages are loaded newest request first, and requests that would be evicted before being read are dropped, so
+ * after a long fling the pages on screen load first instead of after every page the list went past.
+ * <p/>
+ * Except for PageLoader#loadPage(), everything runs on the main thread.
+ */
+public final class PagedDataSource {
+  public static final int DEFAULT_PAGE_SIZE = 64;
+  public static final int DEFAULT_MAX_RESIDENT_PAGES = 16;
+
+  /**
+   * Notified on the main thread when a page becomes available.
+   */
+  public interface Callback {
+    void onPageLoaded(int start, int count);
+  }
+
+  private final PageLoader loader;
+  private final int count;
+  private final int pageSize;
+  private final ExecutorService executor;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  // Resident pages, a handful of them, so they're scanned rather than hashed and reads don't box the page index
+  private final int[] residentIndices;
+  private final String[][] residentPages;
+  // When each resident page was last read, the least recently read one makes room for a new page
+  private final long[] residentTimes;
+  private int residentCount;
+  private long time;
+  // Slot of the last page read, consecutive rows mostly hit the same page so this skips the scan. -1 if none
+  private int lastSlot = -1;
+  // Pages requested and not delivered yet, whether queued or loading
+  private final SparseBooleanArray pendingPages = new SparseBooleanArray();
+  // Queued page requests, oldest first. Guarded by itself, shared with the loading thread
+  private final int[] queue;
+  private int queueSize;
+  // Whether drainQueue is scheduled or running
+  private boolean draining;
+  // Bumped when data is invalidated so in-flight loads are discarded. Written with the queue's lock held
+  private int generation;
+  private Callback callback;
+
+  private final Runnable drainQueue = new Runnable() {
+    @Override
+    public void run() {
+      while (true) {
+        final int pageIndex;
+        final int generation;
+        synchronized (queue) {
+          if (queueSize == 0) {
+            draining = false;
+            return;
+          }
+          // Newest first, it's the closest to what's on screen now
+          pageIndex = queue[--queueSize];
+          generation = PagedDataSource.this.generation;
+        }
+        final int start = pageIndex * pageSize;
+        final int size = Math.min(pageSize, count - start);
+        final String[] page = loader.loadPage(start, size);
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            if (generation != PagedDataSource.this.generation) {
+              return;
+            }
+            pendingPages.delete(pageIndex);
+            putPage(pageIndex, page);
+            if (callback != null) {
+              callback.onPageLoaded(start, size);
+            }
+          }
+        });
+      }
+    }
+  };
+
+  public PagedDataSource(PageLoader loader) {
+    this(loader, DEFAULT_PAGE_SIZE, DEFAULT_MAX_RESIDENT_PAGES);
+  }
+
+  public PagedDataSource(PageLoader loader, int pageSize, int maxResidentPages) {
+    this.loader = loader;
+    this.count = loader.getCount();
+    this.pageSize = pageSize;
+    this.executor = Executors.newSingleThreadExecutor();
+    residentIndices = new int[maxResidentPages];
+    residentPages = new String[maxResidentPages][];
+    residentTimes = new long[maxResidentPages];
+    // More requests than pages that can stay resident would be evicted before they're read
+    queue = new int[maxResidentPages];
+  }
+
+  public void setCallback(Callback callback) {
+    this.callback = callback;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public PageLoader getLoader() {
+    return loader;
+  }
+
+  /**
+   * Returns the item at position, or null if it isn't loaded yet (its page is requested then). Pages next to the
+   * one being read are requested ahead of time when reading close to their boundary.
+   */
+  public String get(int position) {
+    int pageIndex = position / pageSize;
+    String[] page = getPage(pageIndex);
+    int inPage = position - pageIndex * pageSize;
+    if (inPage >= pageSize * 3 / 4) {
+      getPage(pageIndex + 1);
+    } else if (inPage < pageSize / 4 && pageIndex > 0) {
+      getPage(pageIndex - 1);
+    }
+    // Reading the neighbours may have evicted our page, but we already hold a reference to it
+    return page != null ? page[inPage] : null;
+  }
+
+  private String[] getPage(int pageIndex) {
+    int slot = lastSlot >= 0 && residentIndices[lastSlot] == pageIndex ? lastSlot : findSlot(pageIndex);
+    if (slot < 0) {
+      if (pageIndex * pageSize < count) {
+        requestPage(pageIndex);
+      }
+      return null;
+    }
+    lastSlot = slot;
+    residentTimes[slot] = ++time;
+    return residentPages[slot];
+  }
+
+  private int findSlot(int pageIndex) {
+    for (int i = 0; i < residentCount; i++) {
+      if (residentIndices[i] == pageIndex) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void putPage(int pageIndex, String[] page) {
+    int slot;
+    if (residentCount < residentIndices.length) {
+      slot = residentCount++;
+    } else {
+      slot = 0;
+      for (int i = 1; i < residentCount; i++) {
+        if (residentTimes[i] < residentTimes[slot]) {
+          slot = i;
+        }
+      }
+    }
+    residentIndices[slot] = pageIndex;
+    residentPages[slot] = page;
+    residentTimes[slot] = ++time;
+  }
+
+  private void requestPage(int pageIndex) {
+    if (pendingPages.get(pageIndex)) {
+      return;
+    }
+    pendingPages.put(pageIndex, true);
+    boolean schedule;
+    synchronized (queue) {
+      if (queueSize == queue.length) {
+        // The list has moved on since the oldest request, it can be asked again if it's ever read
+        pendingPages.delete(queue[0]);
+        System.arraycopy(queue, 1, queue, 0, --queueSize);
+      }
+      queue[queueSize++] = pageIndex;
+      schedule = !draining;
+      draining = true;
+    }
+    if (schedule) {
+      executor.execute(drainQueue);
+    }
+  }
+
+  /**
+   * Drops every resident page, e.g. to release memory. Rows are loaded again as they are read.
+   */
+  public void invalidate() {
+    synchronized (queue) {
+      generation++;
+      queueSize = 0;
+    }
+    Arrays.fill(residentPages, null);
+    residentCount = 0;
+    lastSlot = -1;
+    pendingPages.clear();
+  }
+
+  /**
+   * Stops the background loader, the data source can't be used afterwards.
+   */
+  public void release() {
+    invalidate();
+    executor.shutdownNow();
+  }
+}
@@ -22,10 +22,17 @@ import android.annotation.TargetApi;
 import android.os.Build;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewTreeObserver;
+import android.view.animation.Interpolator;
 import android.view.animation.LinearInterpolator;
 
+import com.tinbytes.samples.showhidetoolbar.widget.ToolbarListLayout;
+
 /**
  * Helper class for RecyclerView/Toolbar scroll listener.
  */
@@ -39,114 +46,571 @@ public final class RecyclerViewUtils {
 
     // The elevation of the toolbar when content is scrolled behind
     private static final float TOOLBAR_ELEVATION = 14f;
+    // Duration of the hide/show animations
+    private static final long TOOLBAR_ANIMATION_DURATION = 180;
+    // Duration of the shadow fade when a shadow view stands in for the elevation
+    private static final long SHADOW_FADE_DURATION = 120;
+    // Interpolators are stateless, so a single instance is shared by every animation
+    private static final Interpolator TOOLBAR_INTERPOLATOR = new LinearInterpolator();
+
+    /**
+     * Told where the toolbar is every time it moves, whether from scrolling or animating, so other views can follow
+     * it without computing the offset again.
+     */
+    public interface OffsetObserver {
+      /**
+       * offset is the toolbar's translation in pixels, from 0 (shown) to minus its height (hidden). direction is 1 when
+       * the toolbar moves towards hidden, -1 towards shown and 0 when it only got reapplied.
+       */
+      void onToolbarOffsetChanged(int offset, int direction, float hiddenFraction);
+    }
 
     private Toolbar toolbar;
     private State state;
+    // Platform independent hide/show math, this listener only applies its results to the toolbar
+    private final ShowHideToolbarEngine engine = new ShowHideToolbarEngine(TOOLBAR_ELEVATION);
+    // Sums up scroll deltas instead of asking the RecyclerView for its offset on every frame
+    private final ScrollOffsetTracker offsetTracker = new ScrollOffsetTracker();
+    // The toolbar plus any other views hiding along with it, moved and animated in one pass
+    private final ScrollLinkedViews linkedViews;
+    // Last elevation written to the toolbar, to skip redundant writes
+    private float toolbarElevation = -1;
+    // Faded in and out instead of changing the toolbar's elevation, see setShadowView()
+    private View shadowView;
+    // Whether a hide/show animation is running, so we only cancel when there's something to cancel
+    private boolean animating;
+    // Optional recorder of the scroll events we get, see ScrollTrace
+    private ScrollTrace.Recorder traceRecorder;
+    // Optional scroll smoothness metrics
+    private ScrollMetrics metrics;
+    // Whether the list is being dragged or flung
+    private boolean scrolling;
+    private int scrollState = RecyclerView.SCROLL_STATE_IDLE;
+    // Whether to commit to hiding/showing the toolbar as soon as a fling starts, see setFlingPrediction()
+    private boolean flingPrediction;
+    // Where the current fling was predicted to leave the toolbar, SETTLE_NONE if there's no such fling
+    private int flingSettle = ShowHideToolbarEngine.SETTLE_NONE;
+    // Scroll events since the toolbar was last updated, applied together right before the next frame is drawn
+    private int pendingDy;
+    private int pendingEvents;
+    // Whether frameListener is registered. It stays registered from the first scroll event until scrolling goes
+    // idle, adding and removing it every frame would copy the observer's listener list each time
+    private boolean frameListenerRegistered;
+
+    // Offset observers, copied on write so dispatching allocates nothing and tolerates changes midway
+    private OffsetObserver[] offsetObservers = new OffsetObserver[0];
+    // Last values dispatched, so observers only hear about actual moves
+    private int dispatchedOffset;
+    private float dispatchedFraction;
+    private final ScrollLinkedViews.Callback offsetDispatcher = new ScrollLinkedViews.Callback() {
+      @Override
+      public void onHiddenFractionChanged(float hiddenFraction) {
+        int offset = (int) toolbar.getTranslationY();
+        if (offset == dispatchedOffset && hiddenFraction == dispatchedFraction) {
+          return;
+        }
+        int direction = hiddenFraction > dispatchedFraction ? 1 : (hiddenFraction < dispatchedFraction ? -1 : 0);
+        dispatchedOffset = offset;
+        dispatchedFraction = hiddenFraction;
+        OffsetObserver[] observers = offsetObservers;
+        for (int i = 0; i < observers.length; i++) {
+          observers[i].onToolbarOffsetChanged(offset, direction, hiddenFraction);
+        }
+      }
+    };
+
+    // State to put back once the list has rows and has been laid out at the anchor, see onRestoreInstanceState()
+    private State pendingRestore;
+    private ScrollAnchor.Restore anchorRestore;
+    private RecyclerView restoreRecyclerView;
+    // The restored list's adapter seen as stable IDs, reused every frame until the restore is done
+    private final AdapterItemIds restoreItemIds = new AdapterItemIds();
+    private final ViewTreeObserver.OnPreDrawListener restoreListener = new ViewTreeObserver.OnPreDrawListener() {
+      @Override
+      public boolean onPreDraw() {
+        if (pendingRestore == null) {
+          toolbar.getViewTreeObserver().removeOnPreDrawListener(this);
+          return true;
+        }
+        RecyclerView.Adapter adapter = restoreRecyclerView.getAdapter();
+        restoreItemIds.adapter = adapter;
+        int action = anchorRestore.onPreDraw(adapter != null ? restoreItemIds : null);
+        restoreItemIds.adapter = null;
+        if (action == ScrollAnchor.Restore.WAIT) {
+          // No rows yet, e.g. still loading after the process was killed. Stay armed until they're there
+          return true;
+        }
+        if (action == ScrollAnchor.Restore.SCROLL && scrollToAnchor(restoreRecyclerView, pendingRestore)) {
+          // Skip this frame, the next one is laid out at the anchor
+          return false;
+        }
+        toolbar.getViewTreeObserver().removeOnPreDrawListener(this);
+        applyPendingRestore();
+        return true;
+      }
+    };
+
+    private final ViewTreeObserver.OnPreDrawListener frameListener = new ViewTreeObserver.OnPreDrawListener() {
+      @Override
+      public boolean onPreDraw() {
+        applyPendingScroll();
+        // Scrolled without a gesture, e.g. scrollBy() or a layout change, nothing will unregister us later
+        if (scrollState == RecyclerView.SCROLL_STATE_IDLE) {
+          unregisterFrameListener();
+        }
+        return true;
+      }
+    };
+
+    // Animation listeners are reused across animations instead of allocated on every hide/show
+    private final AnimatorListenerAdapter showListener = new AnimatorListenerAdapter() {
+      @Override
+      public void onAnimationStart(Animator animation) {
+        toolbarSetElevation(engine.getShownElevation());
+      }
+
+      @Override
+      public void onAnimationEnd(Animator animation) {
+        onToolbarAnimationEnd();
+      }
+    };
+    private final AnimatorListenerAdapter hideListener = new AnimatorListenerAdapter() {
+      @Override
+      public void onAnimationEnd(Animator animation) {
+        onToolbarAnimationEnd();
+        toolbarSetElevation(0);
+      }
+    };
 
     public ShowHideToolbarOnScrollingListener(Toolbar toolbar) {
+      this(toolbar, new ScrollLinkedViews());
+      linkedViews.add(toolbar, ScrollLinkedViews.DIRECTION_UP);
+    }
+
+    /**
+     * Slides the layout's toolbar through the linked views the layout owns.
+     */
+    public ShowHideToolbarOnScrollingListener(ToolbarListLayout layout) {
+      this(layout.getToolbar(), layout.getLinkedViews());
+    }
+
+    private ShowHideToolbarOnScrollingListener(Toolbar toolbar, ScrollLinkedViews linkedViews) {
       this.toolbar = toolbar;
       this.state = new State();
+      this.linkedViews = linkedViews;
+      linkedViews.setAnimation(TOOLBAR_ANIMATION_DURATION, TOOLBAR_INTERPOLATOR);
+      linkedViews.addCallback(offsetDispatcher);
+    }
+
+    /**
+     * Starts telling observer where the toolbar is every time it moves. Safe to call while observers are being
+     * notified, the change takes effect from the next move.
+     */
+    public void addOffsetObserver(OffsetObserver observer) {
+      OffsetObserver[] observers = new OffsetObserver[offsetObservers.length + 1];
+      System.arraycopy(offsetObservers, 0, observers, 0, offsetObservers.length);
+      observers[offsetObservers.length] = observer;
+      offsetObservers = observers;
+    }
+
+    public void removeOffsetObserver(OffsetObserver observer) {
+      for (int i = 0; i < offsetObservers.length; i++) {
+        if (offsetObservers[i] == observer) {
+          OffsetObserver[] observers = new OffsetObserver[offsetObservers.length - 1];
+          System.arraycopy(offsetObservers, 0, observers, 0, i);
+          System.arraycopy(offsetObservers, i + 1, observers, i, observers.length - i);
+          offsetObservers = observers;
+          return;
+        }
+      }
+    }
+
+    /**
+     * Slides view out of the way along with the toolbar, e.g. a bottom bar or a FAB going
+     * ScrollLinkedViews.DIRECTION_DOWN. extraRange is added to the view's height, e.g. to also hide its margin.
+     */
+    public void addLinkedView(View view, int direction, int extraRange) {
+      linkedViews.add(view, direction, extraRange);
+    }
+
+    public void removeLinkedView(View view) {
+      linkedViews.remove(view);
     }
 
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     private void toolbarSetElevation(float elevation) {
-      if (AndroidUtils.isLollipop()) {
-        toolbar.setElevation(elevation == 0 ? 0 : TOOLBAR_ELEVATION);
+      elevation = elevation == 0 ? 0 : TOOLBAR_ELEVATION;
+      engine.setElevation(elevation);
+      if (elevation == toolbarElevation) {
+        return;
+      }
+      if (shadowView != null) {
+        // Only an alpha change, no outline or shadow state to rebuild
+        toolbarElevation = elevation;
+        shadowView.animate().alpha(elevation == 0 ? 0 : 1).setDuration(SHADOW_FADE_DURATION);
+      } else if (AndroidUtils.isLollipop()) {
+        toolbar.setElevation(toolbarElevation = elevation);
+      }
+    }
+
+    /**
+     * Shows the toolbar's elevation by fading shadowView in and out instead of changing the actual elevation, e.g.
+     * ToolbarListLayout.getToolbarShadow(). That's cheaper than letting the platform rebuild the toolbar's shadow
+     * and works before Lollipop too. Pass null to go back to the elevation.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public void setShadowView(View shadowView) {
+      if (this.shadowView != null) {
+        this.shadowView.animate().cancel();
+        this.shadowView.setAlpha(0);
+      }
+      this.shadowView = shadowView;
+      if (shadowView != null && AndroidUtils.isLollipop()) {
+        toolbar.setElevation(0);
+      }
+      toolbarElevation = -1;
+      toolbarSetElevation(engine.getElevation());
+    }
+
+    private void toolbarSetTranslationY(float translationY) {
+      if (translationY != toolbar.getTranslationY()) {
+        // Linked views follow the toolbar in the same pass
+        linkedViewsSetTranslationY(translationY);
+      }
+    }
+
+    private void linkedViewsSetTranslationY(float translationY) {
+      int height = toolbar.getHeight();
+      linkedViews.setHiddenFraction(height == 0 ? 0 : -translationY / height);
+    }
+
+    private void toolbarCancelAnimation() {
+      if (animating) {
+        animating = false;
+        linkedViews.cancelAnimation();
+        if (metrics != null) {
+          metrics.onAnimationCancelled();
+        }
       }
     }
 
-    private void toolbarAnimateShow(final int verticalOffset) {
-      toolbar.animate()
-          .translationY(0)
-          .setInterpolator(new LinearInterpolator())
-          .setDuration(180)
-          .setListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationStart(Animator animation) {
-              toolbarSetElevation(verticalOffset == 0 ? 0 : TOOLBAR_ELEVATION);
-            }
-          });
+    private void onToolbarAnimationEnd() {
+      animating = false;
+      updateFrameMonitoring();
+    }
+
+    private void updateFrameMonitoring() {
+      if (metrics != null) {
+        metrics.setFrameMonitoring(scrolling || animating);
+      }
+    }
+
+    private void toolbarAnimateShow() {
+      animating = true;
+      updateFrameMonitoring();
+      // The toolbar may have been moved behind our back, e.g. when restoring its state
+      linkedViewsSetTranslationY(toolbar.getTranslationY());
+      linkedViews.animateTo(false, showListener);
     }
 
     private void toolbarAnimateHide() {
-      toolbar.animate()
-          .translationY(-toolbar.getHeight())
-          .setInterpolator(new LinearInterpolator())
-          .setDuration(180)
-          .setListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-              toolbarSetElevation(0);
-            }
-          });
+      animating = true;
+      updateFrameMonitoring();
+      // The toolbar may have been moved behind our back, e.g. when restoring its state
+      linkedViewsSetTranslationY(toolbar.getTranslationY());
+      linkedViews.animateTo(true, hideListener);
+    }
+
+    /**
+     * Moves the toolbar straight to its final state after the list jumped somewhere without scrolling, e.g. through
+     * a fast-scroller. Any running animation is dropped and the offset is read again from the list.
+     */
+    public void snapToolbar(boolean hidden) {
+      flingSettle = ShowHideToolbarEngine.SETTLE_NONE;
+      // Scroll steps from before the jump no longer mean anything
+      pendingDy = 0;
+      pendingEvents = 0;
+      toolbarCancelAnimation();
+      engine.snap(hidden, toolbar.getHeight());
+      toolbarSetElevation(engine.getElevation());
+      toolbarSetTranslationY(engine.getTranslationY());
+      offsetTracker.invalidate();
+    }
+
+    /**
+     * Starts recording every scroll event to the given recorder, pass null to stop. The recorder isn't closed.
+     */
+    public void setTraceRecorder(ScrollTrace.Recorder traceRecorder) {
+      if (this.traceRecorder != null) {
+        this.traceRecorder.flush();
+      }
+      this.traceRecorder = traceRecorder;
+    }
+
+    /**
+     * When enabled, the toolbar commits to hiding or showing as soon as the list is flung, from the fling velocity
+     * and the distance it predicts. The toolbar then animates while the list flings instead of tracking every
+     * scroll step and animating only once the list has stopped.
+     */
+    public void setFlingPrediction(boolean flingPrediction) {
+      this.flingPrediction = flingPrediction;
+    }
+
+    /**
+     * When enabled, the toolbar and linked views are promoted to hardware layers for the length of each hide/show
+     * animation, so they're only recomposited while they move.
+     */
+    public void setHardwareLayerAnimations(boolean hardwareLayers) {
+      linkedViews.setHardwareLayers(hardwareLayers);
+    }
+
+    /**
+     * Stops observing the RecyclerView and its adapter, e.g. when the adapter outlives the screen.
+     */
+    public void detach() {
+      unregisterFrameListener();
+      toolbar.getViewTreeObserver().removeOnPreDrawListener(restoreListener);
+      restoreRecyclerView = null;
+      offsetTracker.detach();
+    }
+
+    /**
+     * Measures rows as they show up so the offset the toolbar reacts to is exact on lists with rows of different
+     * heights, instead of LinearLayoutManager's estimate. Pass null to go back to the estimate.
+     */
+    public void setRowHeightIndex(RowHeightIndex rowHeights) {
+      offsetTracker.setRowHeightIndex(rowHeights);
+    }
+
+    /**
+     * Predicts where the fling that just started leaves the toolbar and starts animating it there right away.
+     */
+    private void predictFling() {
+      float velocity = engine.getDragVelocity();
+      float ppi = toolbar.getResources().getDisplayMetrics().density * 160f;
+      // Same physical coefficient as OverScroller: gravity (m/s^2) * inches per meter * ppi * a tuning factor
+      double physicalCoeff = 9.80665 * 39.37 * ppi * 0.84;
+      double distance = ShowHideToolbarEngine.getFlingDistance(velocity, ViewConfiguration.getScrollFriction(),
+          physicalCoeff);
+      int signedDistance = (int) Math.signum(velocity) * (int) distance;
+      if (traceRecorder != null) {
+        traceRecorder.onFling(signedDistance);
+      }
+      engine.setTranslationY(toolbar.getTranslationY());
+      flingSettle = engine.onFling(signedDistance, toolbar.getHeight());
+      toolbarCancelAnimation();
+      switch (flingSettle) {
+        case ShowHideToolbarEngine.SETTLE_SHOW:
+          toolbarAnimateShow();
+          break;
+        case ShowHideToolbarEngine.SETTLE_HIDE:
+          toolbarAnimateHide();
+          break;
+      }
+    }
+
+    /**
+     * Starts collecting scroll smoothness metrics, pass null to stop.
+     */
+    public void setScrollMetrics(ScrollMetrics metrics) {
+      if (this.metrics != null) {
+        this.metrics.setFrameMonitoring(false);
+      }
+      this.metrics = metrics;
+      updateFrameMonitoring();
     }
 
     @Override
     public final void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+      // Decisions below need the toolbar to be up to date, and traces need the frame before the state change
+      applyPendingScroll();
+      if (traceRecorder != null) {
+        traceRecorder.onScrollStateChanged(newState);
+      }
+      int oldState = scrollState;
+      scrollState = newState;
+      scrolling = newState != RecyclerView.SCROLL_STATE_IDLE;
+      updateFrameMonitoring();
       if (newState == RecyclerView.SCROLL_STATE_IDLE) {
-        if (state.scrollingOffset > 0) {
-          if (state.verticalOffset > toolbar.getHeight()) {
-            toolbarAnimateHide();
-          } else {
-            toolbarAnimateShow(state.verticalOffset);
-          }
-        } else if (state.scrollingOffset < 0) {
-          if (toolbar.getTranslationY() < toolbar.getHeight() * -0.6 && state.verticalOffset > toolbar.getHeight()) {
+        unregisterFrameListener();
+      }
+      if (newState == RecyclerView.SCROLL_STATE_DRAGGING) {
+        // Grabbing the list again takes over from any predicted fling
+        flingSettle = ShowHideToolbarEngine.SETTLE_NONE;
+        engine.clearDragSamples();
+      } else if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+        if (flingPrediction && oldState == RecyclerView.SCROLL_STATE_DRAGGING) {
+          predictFling();
+        }
+      } else if (flingSettle != ShowHideToolbarEngine.SETTLE_NONE) {
+        // The toolbar is already where the fling was predicted to leave it
+        engine.onFlingEnd(offsetTracker.getVerticalOffset(), toolbar.getTranslationY());
+        if (flingSettle == ShowHideToolbarEngine.SETTLE_SHOW) {
+          toolbarSetElevation(engine.getShownElevation());
+        }
+        flingSettle = ShowHideToolbarEngine.SETTLE_NONE;
+      } else {
+        engine.setTranslationY(toolbar.getTranslationY());
+        switch (engine.onScrollIdle(toolbar.getHeight())) {
+          case ShowHideToolbarEngine.SETTLE_SHOW:
+            toolbarAnimateShow();
+            break;
+          case ShowHideToolbarEngine.SETTLE_HIDE:
             toolbarAnimateHide();
-          } else {
-            toolbarAnimateShow(state.verticalOffset);
-          }
+            break;
         }
       }
     }
 
     @Override
     public final void onScrolled(RecyclerView recyclerView, int dx, int dy) {
-      state.verticalOffset = recyclerView.computeVerticalScrollOffset();
-      state.scrollingOffset = dy;
-      int toolbarYOffset = (int) (dy - toolbar.getTranslationY());
-      toolbar.animate().cancel();
-      if (state.scrollingOffset > 0) {
-        if (toolbarYOffset < toolbar.getHeight()) {
-          if (state.verticalOffset > toolbar.getHeight()) {
-            toolbarSetElevation(TOOLBAR_ELEVATION);
-          }
-          toolbar.setTranslationY(state.translationY = -toolbarYOffset);
-        } else {
-          toolbarSetElevation(0);
-          toolbar.setTranslationY(state.translationY = -toolbar.getHeight());
-        }
-      } else if (state.scrollingOffset < 0) {
-        if (toolbarYOffset < 0) {
-          if (state.verticalOffset <= 0) {
-            toolbarSetElevation(0);
-          }
-          toolbar.setTranslationY(state.translationY = 0);
-        } else {
-          if (state.verticalOffset > toolbar.getHeight()) {
-            toolbarSetElevation(TOOLBAR_ELEVATION);
-          }
-          toolbar.setTranslationY(state.translationY = -toolbarYOffset);
+      long start = metrics != null || scrollState == RecyclerView.SCROLL_STATE_DRAGGING ? System.nanoTime() : 0;
+      offsetTracker.attach(recyclerView);
+      int verticalOffset = offsetTracker.onScrolled(dy);
+      if (traceRecorder != null) {
+        traceRecorder.onScrolled(dx, dy, verticalOffset, toolbar.getHeight());
+      }
+      if (scrollState == RecyclerView.SCROLL_STATE_DRAGGING) {
+        engine.addDragSample(start, verticalOffset);
+      }
+      // During a predicted fling the toolbar is already animating to its final state, leave it alone
+      if (flingSettle == ShowHideToolbarEngine.SETTLE_NONE) {
+        // Nested scrolling, scrollBy() and layout adjustments can scroll several times per frame, the toolbar is
+        // only updated once per frame with the sum of the steps
+        pendingDy += dy;
+        pendingEvents++;
+        if (!frameListenerRegistered) {
+          frameListenerRegistered = true;
+          toolbar.getViewTreeObserver().addOnPreDrawListener(frameListener);
         }
       }
+      if (metrics != null) {
+        metrics.onScrollHandled(System.nanoTime() - start);
+      }
     }
 
-    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    public void onRestoreInstanceState(State state) {
-      this.state.verticalOffset = state.verticalOffset;
-      this.state.scrollingOffset = state.scrollingOffset;
-      if (AndroidUtils.isLollipop()) {
-        toolbar.setElevation(state.elevation);
-        toolbar.setTranslationY(state.translationY);
+    private void unregisterFrameListener() {
+      if (frameListenerRegistered) {
+        frameListenerRegistered = false;
+        toolbar.getViewTreeObserver().removeOnPreDrawListener(frameListener);
       }
     }
 
-    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    public State onSaveInstanceState() {
-      state.translationY = toolbar.getTranslationY();
-      if (AndroidUtils.isLollipop()) {
-        state.elevation = toolbar.getElevation();
+    /**
+     * Updates the toolbar for the scroll steps received since the last update, if any.
+     */
+    private void applyPendingScroll() {
+      if (pendingEvents == 0) {
+        return;
+      }
+      long start = metrics != null ? System.nanoTime() : 0;
+      int events = pendingEvents;
+      int dy = pendingDy;
+      pendingDy = 0;
+      pendingEvents = 0;
+      if (flingSettle == ShowHideToolbarEngine.SETTLE_NONE) {
+        toolbarCancelAnimation();
+        engine.setTranslationY(toolbar.getTranslationY());
+        int verticalOffset = offsetTracker.getVerticalOffset();
+        if (traceRecorder != null) {
+          traceRecorder.onFrame(verticalOffset);
+        }
+        engine.onScrolled(verticalOffset, dy, toolbar.getHeight());
+        toolbarSetElevation(engine.getElevation());
+        toolbarSetTranslationY(engine.getTranslationY());
+      }
+      if (metrics != null) {
+        metrics.onScrollEventsApplied(events, System.nanoTime() - start);
+      }
+    }
+
+    /**
+     * Scrolls recyclerView back to the saved anchor row and puts the toolbar back once the list has been laid out
+     * there, right before that frame is drawn. The adapter may be set later, e.g. once data loaded in the
+     * background: until it has rows nothing is restored. Pixel offsets from before a rotation aren't reused, they're
+     * recomputed from the restored layout.
+     */
+    public void onRestoreInstanceState(RecyclerView recyclerView, State state) {
+      pendingRestore = state;
+      anchorRestore = new ScrollAnchor.Restore(state.anchorPosition,
+          state.anchorPosition == RecyclerView.NO_POSITION ? RecyclerView.NO_ID : state.anchorId);
+      restoreRecyclerView = recyclerView;
+      // Without an adapter the layout manager keeps the position until it has one
+      scrollToAnchor(recyclerView, state);
+      offsetTracker.attach(recyclerView);
+      offsetTracker.invalidate();
+      toolbar.getViewTreeObserver().removeOnPreDrawListener(restoreListener);
+      toolbar.getViewTreeObserver().addOnPreDrawListener(restoreListener);
+    }
+
+    /**
+     * Asks recyclerView to scroll to the anchor row, at its current position once known. Returns false if it can't.
+     */
+    private boolean scrollToAnchor(RecyclerView recyclerView, State state) {
+      if (state.anchorPosition == RecyclerView.NO_POSITION
+          || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+        return false;
+      }
+      ((LinearLayoutManager) recyclerView.getLayoutManager()).scrollToPositionWithOffset(anchorRestore.getPosition(),
+          -state.anchorOffset);
+      return true;
+    }
+
+    /**
+     * An adapter's stable IDs, NO_ID for every row if it has none.
+     */
+    private static final class AdapterItemIds implements ScrollAnchor.ItemIds {
+      RecyclerView.Adapter adapter;
+
+      @Override
+      public int getCount() {
+        return adapter.getItemCount();
+      }
+
+      @Override
+      public long getItemId(int position) {
+        return adapter.hasStableIds() ? adapter.getItemId(position) : RecyclerView.NO_ID;
+      }
+    }
+
+    private void applyPendingRestore() {
+      State state = pendingRestore;
+      pendingRestore = null;
+      anchorRestore = null;
+      restoreRecyclerView = null;
+      int height = toolbar.getHeight();
+      float translationY = ScrollAnchor.getTranslationY(state.hiddenFraction, height);
+      // The list has just been laid out at the anchor, so this is a fresh offset
+      int verticalOffset = offsetTracker.onScrolled(0);
+      engine.restore(verticalOffset, 0, translationY, state.elevation);
+      toolbarSetElevation(state.elevation);
+      linkedViewsSetTranslationY(translationY);
+    }
+
+    /**
+     * Saves the first visible row of recyclerView as the anchor, along with how much of the toolbar is hidden.
+     */
+    public State onSaveInstanceState(RecyclerView recyclerView) {
+      applyPendingScroll();
+      if (pendingRestore != null) {
+        // Never laid out since it was restored, save it again as is
+        return pendingRestore;
       }
+      state.anchorPosition = RecyclerView.NO_POSITION;
+      state.anchorId = RecyclerView.NO_ID;
+      state.anchorOffset = 0;
+      RecyclerView.LayoutManager lm = recyclerView.getLayoutManager();
+      if (lm != null && lm.getChildCount() > 0) {
+        View first = lm.getChildAt(0);
+        RecyclerView.ViewHolder holder = recyclerView.getChildViewHolder(first);
+        state.anchorPosition = holder.getLayoutPosition();
+        state.anchorId = holder.getItemId();
+        state.anchorOffset = recyclerView.getPaddingTop() - lm.getDecoratedTop(first);
+      }
+      int height = toolbar.getHeight();
+      state.hiddenFraction = ScrollAnchor.getHiddenFraction(toolbar.getTranslationY(), height);
+      // Not the toolbar's: it stays 0 while a shadow view stands in for it, the engine tracks both
+      state.elevation = engine.getElevation();
       return state;
     }
 
@@ -164,21 +628,22 @@ public final class RecyclerViewUtils {
         }
       };
 
-      // Keeps track of the overall vertical offset in the list
-      private int verticalOffset;
-      // Determines the scroll UP/DOWN offset
-      private int scrollingOffset;
-      // Toolbar values
-      private float translationY;
+      // First visible row, and how far the list is scrolled into it
+      private int anchorPosition = RecyclerView.NO_POSITION;
+      private long anchorId = RecyclerView.NO_ID;
+      private int anchorOffset;
+      // Toolbar values, translation as a fraction of its height since the height may change with the configuration
+      private float hiddenFraction;
       private float elevation;
 
       State() {
       }
 
       State(Parcel parcel) {
-        this.verticalOffset = parcel.readInt();
-        this.scrollingOffset = parcel.readInt();
-        this.translationY = parcel.readFloat();
+        this.anchorPosition = parcel.readInt();
+        this.anchorId = parcel.readLong();
+        this.anchorOffset = parcel.readInt();
+        this.hiddenFraction = parcel.readFloat();
         this.elevation = parcel.readFloat();
       }
 
@@ -189,14 +654,222 @@ public final class RecyclerViewUtils {
 
       @Override
       public void writeToParcel(Parcel parcel, int flags) {
-        parcel.writeInt(verticalOffset);
-        parcel.writeInt(scrollingOffset);
-        parcel.writeFloat(translationY);
+        parcel.writeInt(anchorPosition);
+        parcel.writeLong(anchorId);
+        parcel.writeInt(anchorOffset);
+        parcel.writeFloat(hiddenFraction);
         parcel.writeFloat(elevation);
       }
     }
   }
 
+  /**
+   * Keeps track of the overall vertical offset of a RecyclerView by summing up the scroll deltas. The offset is
+   * re-synced with computeVerticalScrollOffset() only after layout passes and adapter notifications, so reading
+   * it while scrolling is O(1) and free of the estimation drift on lists with rows of different heights.
+   * <p/>
+   * With a RowHeightIndex, rows are measured as they show up and re-syncs are exact for vertical
+   * LinearLayoutManagers, only rows never seen are estimated.
+   */
+  public static class ScrollOffsetTracker {
+    private RecyclerView recyclerView;
+    private RecyclerView.Adapter adapter;
+    private int verticalOffset;
+    // Whether the summed offset can no longer be trusted and must be asked to the RecyclerView
+    private boolean dirty = true;
+    // Optional measured row heights, kept in step with the adapter
+    private RowHeightIndex rowHeights;
+
+    private final View.OnLayoutChangeListener layoutChangeListener = new View.OnLayoutChangeListener() {
+      @Override
+      public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                 int oldLeft, int oldTop, int oldRight, int oldBottom) {
+        dirty = true;
+      }
+    };
+
+    private final RecyclerView.AdapterDataObserver adapterDataObserver = new RecyclerView.AdapterDataObserver() {
+      @Override
+      public void onChanged() {
+        dirty = true;
+        resetRowHeights();
+      }
+
+      @Override
+      public void onItemRangeChanged(int positionStart, int itemCount) {
+        dirty = true;
+        if (rowHeights != null) {
+          rowHeights.clearHeights(positionStart, itemCount);
+        }
+      }
+
+      @Override
+      public void onItemRangeInserted(int positionStart, int itemCount) {
+        dirty = true;
+        if (rowHeights != null) {
+          rowHeights.insert(positionStart, itemCount);
+        }
+      }
+
+      @Override
+      public void onItemRangeRemoved(int positionStart, int itemCount) {
+        dirty = true;
+        if (rowHeights != null) {
+          rowHeights.remove(positionStart, itemCount);
+        }
+      }
+
+      @Override
+      public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        dirty = true;
+        if (rowHeights != null) {
+          // RecyclerView only ever moves single items
+          rowHeights.move(fromPosition, toPosition);
+        }
+      }
+    };
+
+    public void setRowHeightIndex(RowHeightIndex rowHeights) {
+      this.rowHeights = rowHeights;
+      resetRowHeights();
+      dirty = true;
+    }
+
+    private void resetRowHeights() {
+      if (rowHeights != null) {
+        rowHeights.reset(adapter != null ? adapter.getItemCount() : 0);
+      }
+    }
+
+    public void attach(RecyclerView recyclerView) {
+      if (this.recyclerView == recyclerView) {
+        return;
+      }
+      detach();
+      this.recyclerView = recyclerView;
+      recyclerView.addOnLayoutChangeListener(layoutChangeListener);
+      registerAdapter(recyclerView.getAdapter());
+      dirty = true;
+    }
+
+    public void detach() {
+      if (recyclerView != null) {
+        recyclerView.removeOnLayoutChangeListener(layoutChangeListener);
+        registerAdapter(null);
+        recyclerView = null;
+      }
+    }
+
+    private void registerAdapter(RecyclerView.Adapter adapter) {
+      if (this.adapter != null) {
+        this.adapter.unregisterAdapterDataObserver(adapterDataObserver);
+      }
+      this.adapter = adapter;
+      if (adapter != null) {
+        adapter.registerAdapterDataObserver(adapterDataObserver);
+      }
+      resetRowHeights();
+    }
+
+    /**
+     * Must be called from RecyclerView.OnScrollListener#onScrolled(). Returns the updated vertical offset.
+     */
+    public int onScrolled(int dy) {
+      if (recyclerView.getAdapter() != adapter) {
+        registerAdapter(recyclerView.getAdapter());
+        dirty = true;
+      }
+      LinearLayoutManager lm = getMeasurableLayoutManager();
+      if (lm != null) {
+        measureRows(lm);
+      }
+      // RecyclerView reports a zero delta after layout passes, use it as a re-sync point too
+      if (dirty || dy == 0) {
+        verticalOffset = lm != null && lm.getChildCount() > 0
+            ? computeOffset(lm) : recyclerView.computeVerticalScrollOffset();
+        dirty = false;
+      } else {
+        verticalOffset = Math.max(0, verticalOffset + dy);
+      }
+      return verticalOffset;
+    }
+
+    /**
+     * The layout manager if rows can be measured for exact offsets, null otherwise.
+     */
+    private LinearLayoutManager getMeasurableLayoutManager() {
+      if (rowHeights == null || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+        return null;
+      }
+      LinearLayoutManager lm = (LinearLayoutManager) recyclerView.getLayoutManager();
+      return lm.getOrientation() == LinearLayoutManager.VERTICAL && !lm.getReverseLayout() ? lm : null;
+    }
+
+    /**
+     * Records the heights of the rows on screen, unchanged ones cost a single array read.
+     */
+    private void measureRows(LinearLayoutManager lm) {
+      int count = rowHeights.getCount();
+      for (int i = 0; i < lm.getChildCount(); i++) {
+        View child = lm.getChildAt(i);
+        int position = lm.getPosition(child);
+        if (position >= 0 && position < count) {
+          rowHeights.setHeight(position, getRowHeight(lm, child));
+        }
+      }
+    }
+
+    private static int getRowHeight(LinearLayoutManager lm, View child) {
+      RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) child.getLayoutParams();
+      return lm.getDecoratedMeasuredHeight(child) + lp.topMargin + lp.bottomMargin;
+    }
+
+    /**
+     * Exact offset from the measured heights of the rows above the first one on screen.
+     */
+    private int computeOffset(LinearLayoutManager lm) {
+      View first = lm.getChildAt(0);
+      int position = Math.min(lm.getPosition(first), rowHeights.getCount());
+      RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) first.getLayoutParams();
+      int top = lm.getDecoratedTop(first) - lp.topMargin;
+      return Math.max(0, rowHeights.getOffset(Math.max(0, position)) + recyclerView.getPaddingTop() - top);
+    }
+
+    public int getVerticalOffset() {
+      return verticalOffset;
+    }
+
+    public void invalidate() {
+      dirty = true;
+    }
+  }
+
+  /**
+   * Forwards ListDiff operations to a RecyclerView adapter as granular notifications.
+   */
+  public static class AdapterUpdateCallback implements ListDiff.UpdateCallback {
+    private final RecyclerView.Adapter adapter;
+
+    public AdapterUpdateCallback(RecyclerView.Adapter adapter) {
+      this.adapter = adapter;
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+      adapter.notifyItemRangeInserted(position, count);
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+      adapter.notifyItemRangeRemoved(position, count);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+      adapter.notifyItemMoved(fromPosition, toPosition);
+    }
+  }
+
   private RecyclerViewUtils() {
   }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import com.tinbytes.samples.showhidetoolbar.R;
+
+/**
+ * Times relayouts of activity layouts off screen to compare their view hierarchies, e.g. main_activity.xml against
+ * the RelativeLayout it replaced in main_activity_relative.xml. Each layout is inflated once and relaid out the two
+ * ways it happens while the app runs: a rotation, which measures the whole tree at a new size, and a toolbar change
+ * (title, menu), which only requests a layout from the toolbar up. The list is empty, so only the hierarchy around
+ * it is compared. Runs on the main thread.
+ */
+public final class RelayoutBenchmark {
+  private static final String TAG = "RelayoutBenchmark";
+  // Relayouts before timing, so the code is compiled and caches are warm
+  private static final int WARMUP = 100;
+  private static final int ITERATIONS = 1000;
+
+  /**
+   * Logs the average rotation and toolbar change relayout times of every layout, at width x height.
+   */
+  public static void logComparison(Context context, int width, int height, int... layoutIds) {
+    for (int layoutId : layoutIds) {
+      View root = inflate(context, layoutId);
+      time(root, width, height, WARMUP, true);
+      time(root, width, height, WARMUP, false);
+      long rotationNanos = time(root, width, height, ITERATIONS, true);
+      long toolbarChangeNanos = time(root, width, height, ITERATIONS, false);
+      Log.i(TAG, context.getResources().getResourceEntryName(layoutId) + ": rotation " + rotationNanos / 1000
+          + "us, toolbar change " + toolbarChangeNanos / 1000 + "us per relayout");
+    }
+  }
+
+  private static View inflate(Context context, int layoutId) {
+    View root = LayoutInflater.from(context).inflate(layoutId, new FrameLayout(context), false);
+    // Without a layout manager the list logs an error on every layout
+    RecyclerView list = (RecyclerView) root.findViewById(R.id.rvCities);
+    list.setLayoutManager(new LinearLayoutManager(context));
+    return root;
+  }
+
+  /**
+   * Average nanoseconds per relayout of root. With rotate, width and height swap and every view is flagged the way
+   * a configuration change does, otherwise only the toolbar asks for a layout at the same size.
+   */
+  private static long time(View root, int width, int height, int iterations, boolean rotate) {
+    View toolbar = root.findViewById(R.id.tToolbar);
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      boolean landscape = rotate && i % 2 == 1;
+      int w = landscape ? height : width;
+      int h = landscape ? width : height;
+      if (rotate) {
+        forceLayout(root);
+      } else {
+        toolbar.requestLayout();
+      }
+      root.measure(View.MeasureSpec.makeMeasureSpec(w, View.MeasureSpec.EXACTLY),
+          View.MeasureSpec.makeMeasureSpec(h, View.MeasureSpec.EXACTLY));
+      root.layout(0, 0, w, h);
+    }
+    return (System.nanoTime() - start) / iterations;
+  }
+
+  private static void forceLayout(View view) {
+    view.forceLayout();
+    if (view instanceof ViewGroup) {
+      ViewGroup group = (ViewGroup) view;
+      for (int i = 0; i < group.getChildCount(); i++) {
+        forceLayout(group.getChildAt(i));
+      }
+    }
+  }
+
+  private RelayoutBenchmark() {
+  }
+}
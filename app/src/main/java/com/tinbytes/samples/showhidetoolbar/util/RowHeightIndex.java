@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import java.util.Arrays;
+
+/**
+ * Measured height of every row of a list, with the pixel offset of any row in O(log n) through Fenwick trees
+ * (binary indexed trees) over the heights. Rows not measured yet count as the average measured height.
+ * <p/>
+ * Setting or clearing a height is O(log n). Inserting, removing or moving rows shifts positions, so those only
+ * shift the heights and mark the trees dirty; they're rebuilt in O(n) by the next query, once for a whole batch of
+ * adapter changes. Plain Java, no Android dependencies.
+ */
+public final class RowHeightIndex {
+  private static final int UNKNOWN = -1;
+
+  // Height per position, UNKNOWN if not measured yet. Only the first count entries are rows, the rest is room to
+  // insert without reallocating
+  private int[] heights = new int[0];
+  private int count;
+  // 1-based Fenwick trees over the measured heights and over which rows are measured, sized like heights
+  private long[] heightTree = new long[1];
+  private int[] measuredTree = new int[1];
+  private long measuredHeight;
+  private int measuredCount;
+  // Whether rows were shifted since the trees were built, in which case only heights is up to date
+  private boolean dirty;
+  // Assumed for unmeasured rows until something has been measured
+  private final int defaultHeight;
+
+  public RowHeightIndex() {
+    this(0);
+  }
+
+  public RowHeightIndex(int defaultHeight) {
+    this.defaultHeight = defaultHeight;
+  }
+
+  /**
+   * Forgets every height and resizes to count rows.
+   */
+  public void reset(int count) {
+    if (count > heights.length) {
+      heights = new int[count];
+    }
+    this.count = count;
+    Arrays.fill(heights, 0, count, UNKNOWN);
+    dirty = true;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public void setHeight(int position, int height) {
+    checkPosition(position, count);
+    int old = heights[position];
+    if (old == height) {
+      return;
+    }
+    heights[position] = height;
+    if (dirty) {
+      // Picked up by the rebuild
+      return;
+    }
+    if (old == UNKNOWN) {
+      update(position, height, 1);
+    } else {
+      update(position, height - old, 0);
+    }
+  }
+
+  /**
+   * Marks count rows from start as not measured, e.g. because their content changed.
+   */
+  public void clearHeights(int start, int count) {
+    checkRange(start, count, this.count);
+    for (int position = start; position < start + count; position++) {
+      int old = heights[position];
+      if (old != UNKNOWN) {
+        heights[position] = UNKNOWN;
+        if (!dirty) {
+          update(position, -old, -1);
+        }
+      }
+    }
+  }
+
+  public void insert(int start, int count) {
+    checkRange(start, 0, this.count);
+    if (this.count + count > heights.length) {
+      heights = Arrays.copyOf(heights, Math.max(this.count + count, heights.length * 3 / 2));
+    }
+    System.arraycopy(heights, start, heights, start + count, this.count - start);
+    Arrays.fill(heights, start, start + count, UNKNOWN);
+    this.count += count;
+    dirty = true;
+  }
+
+  public void remove(int start, int count) {
+    checkRange(start, count, this.count);
+    System.arraycopy(heights, start + count, heights, start, this.count - start - count);
+    this.count -= count;
+    dirty = true;
+  }
+
+  public void move(int fromPosition, int toPosition) {
+    checkPosition(fromPosition, count);
+    checkPosition(toPosition, count);
+    int height = heights[fromPosition];
+    if (fromPosition < toPosition) {
+      System.arraycopy(heights, fromPosition + 1, heights, fromPosition, toPosition - fromPosition);
+    } else {
+      System.arraycopy(heights, toPosition, heights, toPosition + 1, fromPosition - toPosition);
+    }
+    heights[toPosition] = height;
+    dirty = true;
+  }
+
+  /**
+   * Height assumed for rows not measured yet: the average measured height.
+   */
+  public int getEstimatedHeight() {
+    ensureBuilt();
+    return measuredCount == 0 ? defaultHeight : (int) (measuredHeight / measuredCount);
+  }
+
+  /**
+   * Pixel offset of the top of the row at position, i.e. the height of every row above it.
+   */
+  public int getOffset(int position) {
+    checkPosition(position, count + 1);
+    ensureBuilt();
+    long height = 0;
+    int measured = 0;
+    for (int i = position; i > 0; i -= i & -i) {
+      height += heightTree[i];
+      measured += measuredTree[i];
+    }
+    return (int) (height + (long) (position - measured) * getEstimatedHeight());
+  }
+
+  public int getTotalHeight() {
+    return getOffset(count);
+  }
+
+  private void update(int position, int heightDelta, int measuredDelta) {
+    measuredHeight += heightDelta;
+    measuredCount += measuredDelta;
+    for (int i = position + 1; i <= count; i += i & -i) {
+      heightTree[i] += heightDelta;
+      measuredTree[i] += measuredDelta;
+    }
+  }
+
+  private void ensureBuilt() {
+    if (dirty) {
+      dirty = false;
+      rebuild();
+    }
+  }
+
+  private void rebuild() {
+    int n = count;
+    if (heightTree.length < n + 1) {
+      heightTree = new long[heights.length + 1];
+      measuredTree = new int[heights.length + 1];
+    } else {
+      Arrays.fill(heightTree, 0, n + 1, 0);
+      Arrays.fill(measuredTree, 0, n + 1, 0);
+    }
+    measuredHeight = 0;
+    measuredCount = 0;
+    for (int i = 1; i <= n; i++) {
+      if (heights[i - 1] != UNKNOWN) {
+        heightTree[i] += heights[i - 1];
+        measuredTree[i]++;
+        measuredHeight += heights[i - 1];
+        measuredCount++;
+      }
+      // Push the node's sum up to its parent, building the trees in O(n)
+      int parent = i + (i & -i);
+      if (parent <= n) {
+        heightTree[parent] += heightTree[i];
+        measuredTree[parent] += measuredTree[i];
+      }
+    }
+  }
+
+  // Positions past count would silently read the spare room at the end of heights
+  private static void checkPosition(int position, int size) {
+    if (position < 0 || position >= size) {
+      throw new IndexOutOfBoundsException("position " + position + ", size " + size);
+    }
+  }
+
+  private static void checkRange(int start, int count, int size) {
+    if (start < 0 || count < 0 || start + count > size) {
+      throw new IndexOutOfBoundsException("start " + start + ", count " + count + ", size " + size);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+/**
+ * What ShowHideToolbarOnScrollingListener saves instead of pixel offsets: the anchor row by position and stable ID,
+ * and how much of the toolbar is hidden as a fraction of its height. Both still mean the same after row or toolbar
+ * heights changed, e.g. across a rotation. Plain Java, no Android dependencies.
+ */
+public final class ScrollAnchor {
+  // Same as RecyclerView.NO_ID
+  public static final long NO_ID = -1;
+
+  /**
+   * Stable IDs of the rows of a list, e.g. an adapter's.
+   */
+  public interface ItemIds {
+    int getCount();
+
+    long getItemId(int position);
+  }
+
+  /**
+   * Decides, once per frame, when a saved anchor can be put back. The list is scrolled to the saved position right
+   * away, but the rows may not be there yet, e.g. still loading after the process was killed, or may have moved.
+   * Nothing is restored before the list has rows, the list is scrolled again if the anchor row is now elsewhere,
+   * and the toolbar is only put back once the list has been laid out at the anchor.
+   */
+  public static final class Restore {
+    // The list has no rows yet, keep waiting
+    public static final int WAIT = 0;
+    // The anchor row is somewhere else, scroll to getPosition() and check again after the next layout
+    public static final int SCROLL = 1;
+    // The list is laid out at the anchor, put the toolbar back
+    public static final int APPLY = 2;
+
+    private final int savedPosition;
+    private final long id;
+    // Where the list was last asked to scroll to
+    private int position;
+
+    /**
+     * For an anchor saved at position with id, which the list has already been asked to scroll to.
+     */
+    public Restore(int position, long id) {
+      this.savedPosition = position;
+      this.id = id;
+      this.position = position;
+    }
+
+    /**
+     * What to do before drawing the next frame, given the list's rows or null if it has no adapter yet.
+     */
+    public int onPreDraw(ItemIds ids) {
+      if (ids == null || ids.getCount() == 0) {
+        return WAIT;
+      }
+      int current = findPosition(ids, savedPosition, id);
+      if (current != position) {
+        position = current;
+        return SCROLL;
+      }
+      return APPLY;
+    }
+
+    public int getPosition() {
+      return position;
+    }
+  }
+
+  /**
+   * Current position of the anchor row saved at position with id. Rows usually haven't moved, or only a little
+   * through inserts and removes around the anchor, so it's looked for outwards from the saved position. If it's
+   * gone, or there's no id, the saved position is kept within the list.
+   */
+  public static int findPosition(ItemIds ids, int position, long id) {
+    int count = ids.getCount();
+    if (id != NO_ID) {
+      int start = Math.max(0, Math.min(position, count - 1));
+      for (int distance = 0; start - distance >= 0 || start + distance < count; distance++) {
+        if (start + distance < count && ids.getItemId(start + distance) == id) {
+          return start + distance;
+        }
+        if (distance > 0 && start - distance >= 0 && ids.getItemId(start - distance) == id) {
+          return start - distance;
+        }
+      }
+    }
+    return Math.max(0, Math.min(position, count - 1));
+  }
+
+  /**
+   * How much of a toolbar at translationY is hidden, from 0 (fully shown) to 1 (fully hidden).
+   */
+  public static float getHiddenFraction(float translationY, int toolbarHeight) {
+    return toolbarHeight == 0 ? 0 : Math.max(0, Math.min(1, -translationY / toolbarHeight));
+  }
+
+  /**
+   * Translation of a toolbar of toolbarHeight with hiddenFraction of it hidden, in whole pixels.
+   */
+  public static float getTranslationY(float hiddenFraction, int toolbarHeight) {
+    return -Math.round(hiddenFraction * toolbarHeight);
+  }
+
+  private ScrollAnchor() {
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.view.View;
+import android.view.animation.Interpolator;
+
+/**
+ * Views that slide out of the way together as a list scrolls, e.g. a toolbar, a bottom bar and a FAB. They're all
+ * driven by a single hidden fraction (0 is shown, 1 is hidden): each scroll step or animation frame writes every
+ * view in one pass, and hide/show is a single animator for all of them.
+ * <p/>
+ * Each view slides by its own height plus an optional extra range (e.g. a FAB's margin), either up or down.
+ * Translations are rounded to whole pixels. Everything runs on the main thread.
+ * <p/>
+ * With setHardwareLayers() the views are drawn into hardware layers while animating, so moving them only
+ * recomposites the layers instead of redrawing e.g. a toolbar's title and menu on every frame. Animations are still
+ * driven by a ValueAnimator on the main thread, since every frame moves all the views together and notifies the
+ * callbacks, so they can't run on the render thread and a busy main thread still delays them.
+ */
+public final class ScrollLinkedViews {
+  public static final int DIRECTION_UP = -1;
+  public static final int DIRECTION_DOWN = 1;
+
+  /**
+   * Notified after every pass over the views, e.g. to redraw something that depends on where they are. Callbacks
+   * may add or remove callbacks while being notified, that takes effect from the next pass.
+   */
+  public interface Callback {
+    void onHiddenFractionChanged(float hiddenFraction);
+  }
+
+  // Registered views, copied on write so passes never allocate
+  private View[] views = new View[0];
+  private int[] directions = new int[0];
+  private int[] extraRanges = new int[0];
+  private float hiddenFraction;
+  // Whether a hidden fraction was ever set. Until then the views are left wherever something else put them
+  private boolean hiddenFractionSet;
+  // Copied on write as well, so dispatching allocates nothing and tolerates changes midway
+  private Callback[] callbacks = new Callback[0];
+  private final ValueAnimator animator = ValueAnimator.ofFloat(0, 1);
+  // Hidden fractions the current animation goes between, interpolated by hand so frames don't box a Float
+  private float animateFrom;
+  private float animateTo;
+  // Whether to animate with hardware layers, and whether the views currently have them
+  private boolean hardwareLayers;
+  private boolean layersEnabled;
+
+  // Drops the layers once an animation ends or is cancelled, but not when animateTo() replaces it
+  private final AnimatorListenerAdapter layerListener = new AnimatorListenerAdapter() {
+    @Override
+    public void onAnimationEnd(Animator animation) {
+      setLayersEnabled(false);
+    }
+  };
+
+  public ScrollLinkedViews() {
+    animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+      @Override
+      public void onAnimationUpdate(ValueAnimator animation) {
+        setHiddenFraction(animateFrom + (animateTo - animateFrom) * animation.getAnimatedFraction());
+      }
+    });
+  }
+
+  public void add(View view, int direction) {
+    add(view, direction, 0);
+  }
+
+  /**
+   * Slides view by its height plus extraRange pixels when hidden, in the given direction.
+   */
+  public void add(View view, int direction, int extraRange) {
+    int n = views.length;
+    View[] newViews = new View[n + 1];
+    int[] newDirections = new int[n + 1];
+    int[] newExtraRanges = new int[n + 1];
+    System.arraycopy(views, 0, newViews, 0, n);
+    System.arraycopy(directions, 0, newDirections, 0, n);
+    System.arraycopy(extraRanges, 0, newExtraRanges, 0, n);
+    newViews[n] = view;
+    if (layersEnabled) {
+      view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+    }
+    newDirections[n] = direction;
+    newExtraRanges[n] = extraRange;
+    views = newViews;
+    directions = newDirections;
+    extraRanges = newExtraRanges;
+    if (hiddenFractionSet) {
+      apply(n);
+    }
+  }
+
+  public void remove(View view) {
+    for (int i = 0; i < views.length; i++) {
+      if (views[i] == view) {
+        if (layersEnabled) {
+          view.setLayerType(View.LAYER_TYPE_NONE, null);
+        }
+        int n = views.length - 1;
+        View[] newViews = new View[n];
+        int[] newDirections = new int[n];
+        int[] newExtraRanges = new int[n];
+        System.arraycopy(views, 0, newViews, 0, i);
+        System.arraycopy(views, i + 1, newViews, i, n - i);
+        System.arraycopy(directions, 0, newDirections, 0, i);
+        System.arraycopy(directions, i + 1, newDirections, i, n - i);
+        System.arraycopy(extraRanges, 0, newExtraRanges, 0, i);
+        System.arraycopy(extraRanges, i + 1, newExtraRanges, i, n - i);
+        views = newViews;
+        directions = newDirections;
+        extraRanges = newExtraRanges;
+        return;
+      }
+    }
+  }
+
+  public void addCallback(Callback callback) {
+    Callback[] newCallbacks = new Callback[callbacks.length + 1];
+    System.arraycopy(callbacks, 0, newCallbacks, 0, callbacks.length);
+    newCallbacks[callbacks.length] = callback;
+    callbacks = newCallbacks;
+  }
+
+  public void removeCallback(Callback callback) {
+    for (int i = 0; i < callbacks.length; i++) {
+      if (callbacks[i] == callback) {
+        Callback[] newCallbacks = new Callback[callbacks.length - 1];
+        System.arraycopy(callbacks, 0, newCallbacks, 0, i);
+        System.arraycopy(callbacks, i + 1, newCallbacks, i, newCallbacks.length - i);
+        callbacks = newCallbacks;
+        return;
+      }
+    }
+  }
+
+  public void setAnimation(long duration, Interpolator interpolator) {
+    animator.setDuration(duration);
+    animator.setInterpolator(interpolator);
+  }
+
+  /**
+   * Whether the views get hardware layers for the length of each animation. They shouldn't change their content
+   * while animating, or the layers are redrawn anyway.
+   */
+  public void setHardwareLayers(boolean hardwareLayers) {
+    this.hardwareLayers = hardwareLayers;
+  }
+
+  private void setLayersEnabled(boolean enabled) {
+    if (enabled == layersEnabled) {
+      return;
+    }
+    layersEnabled = enabled;
+    for (View view : views) {
+      view.setLayerType(enabled ? View.LAYER_TYPE_HARDWARE : View.LAYER_TYPE_NONE, null);
+      if (enabled && view.getWindowToken() != null) {
+        // Render the layer now rather than in the first frame of the animation
+        view.buildLayer();
+      }
+    }
+  }
+
+  public float getHiddenFraction() {
+    return hiddenFraction;
+  }
+
+  /**
+   * Moves every view to the given hidden fraction.
+   */
+  public void setHiddenFraction(float hiddenFraction) {
+    this.hiddenFraction = hiddenFraction;
+    hiddenFractionSet = true;
+    for (int i = 0; i < views.length; i++) {
+      apply(i);
+    }
+    Callback[] callbacks = this.callbacks;
+    for (int i = 0; i < callbacks.length; i++) {
+      callbacks[i].onHiddenFractionChanged(hiddenFraction);
+    }
+  }
+
+  /**
+   * Moves every view to the current hidden fraction again, e.g. after their heights changed. Does nothing until a
+   * hidden fraction has been set, so views moved by other means stay where they are.
+   */
+  public void reapply() {
+    if (hiddenFractionSet) {
+      setHiddenFraction(hiddenFraction);
+    }
+  }
+
+  private void apply(int i) {
+    View view = views[i];
+    float translation = directions[i] * Math.round(hiddenFraction * (view.getHeight() + extraRanges[i]));
+    if (translation != view.getTranslationY()) {
+      view.setTranslationY(translation);
+    }
+  }
+
+  /**
+   * Animates every view to fully hidden or shown. listener replaces the one from the previous animation.
+   */
+  public void animateTo(boolean hidden, Animator.AnimatorListener listener) {
+    // The replaced listener isn't told about the animation being cut short
+    animator.removeAllListeners();
+    animator.cancel();
+    setLayersEnabled(hardwareLayers);
+    if (hardwareLayers) {
+      animator.addListener(layerListener);
+    }
+    if (listener != null) {
+      animator.addListener(listener);
+    }
+    animateFrom = hiddenFraction;
+    animateTo = hidden ? 1 : 0;
+    animator.start();
+  }
+
+  public boolean isAnimating() {
+    return animator.isRunning();
+  }
+
+  public void cancelAnimation() {
+    animator.cancel();
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Opt-in scroll smoothness metrics for RecyclerViewUtils.ShowHideToolbarOnScrollingListener: histograms of the
+ * time spent handling each scroll callback and of the time spent updating the toolbar once per frame for the
+ * callbacks received since the last one, frames over budget while scrolling or animating the toolbar (measured
+ * with Choreographer frame callbacks, so only on Jelly Bean and up) and toolbar animation cancellations.
+ * <p/>
+ * All methods must be called from the main thread.
+ */
+public final class ScrollMetrics {
+  private static final String TAG = "ScrollMetrics";
+
+  // Default frame budget for a 60Hz display
+  public static final long DEFAULT_FRAME_BUDGET_NANOS = 16666667;
+
+  // Upper bounds (exclusive) of the duration histogram buckets, the last bucket holds everything above
+  private static final long[] BUCKET_BOUNDS_MICROS = {25, 50, 100, 250, 500, 1000, 2000, 4000, 8000, 16000};
+
+  /**
+   * Receives metrics as they are recorded, on the main thread.
+   */
+  public interface Listener {
+    void onScrollHandled(long durationNanos);
+
+    /**
+     * The toolbar was updated once for the given number of scroll callbacks, taking durationNanos.
+     */
+    void onScrollApplied(int events, long durationNanos);
+
+    void onFrameOverBudget(long frameIntervalNanos);
+
+    void onAnimationCancelled();
+  }
+
+  /**
+   * Durations bucketed by BUCKET_BOUNDS_MICROS, along with their count, total and max.
+   */
+  private static final class Histogram {
+    final long[] buckets = new long[BUCKET_BOUNDS_MICROS.length + 1];
+    long count;
+    long totalNanos;
+    long maxNanos;
+
+    void add(long durationNanos) {
+      long micros = durationNanos / 1000;
+      int bucket = 0;
+      while (bucket < BUCKET_BOUNDS_MICROS.length && micros >= BUCKET_BOUNDS_MICROS[bucket]) {
+        bucket++;
+      }
+      buckets[bucket]++;
+      count++;
+      totalNanos += durationNanos;
+      maxNanos = Math.max(maxNanos, durationNanos);
+    }
+
+    void reset() {
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = 0;
+      }
+      count = 0;
+      totalNanos = 0;
+      maxNanos = 0;
+    }
+
+    void dump(PrintWriter pw, String title) {
+      pw.println(title + ": count=" + count
+          + " avgUs=" + (count == 0 ? 0 : totalNanos / count / 1000)
+          + " maxUs=" + maxNanos / 1000);
+      for (int i = 0; i < buckets.length; i++) {
+        String bucket = i < BUCKET_BOUNDS_MICROS.length
+            ? "<" + BUCKET_BOUNDS_MICROS[i] : ">=" + BUCKET_BOUNDS_MICROS[i - 1];
+        pw.println("  " + bucket + "us: " + buckets[i]);
+      }
+    }
+  }
+
+  private final long frameBudgetNanos;
+  // Time spent in each onScrolled() callback
+  private final Histogram handler = new Histogram();
+  // Time spent updating the toolbar for the callbacks of a frame
+  private final Histogram update = new Histogram();
+  private long frames;
+  private long framesOverBudget;
+  private long framesSkipped;
+  private long animationCancellations;
+  private long scrollEvents;
+  private long scrollUpdates;
+  private Listener listener;
+
+  // Frame monitoring state
+  private boolean monitoring;
+  private long lastFrameTimeNanos;
+  private Object frameCallback;
+
+  public ScrollMetrics() {
+    this(DEFAULT_FRAME_BUDGET_NANOS);
+  }
+
+  public ScrollMetrics(long frameBudgetNanos) {
+    this.frameBudgetNanos = frameBudgetNanos;
+  }
+
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  void onScrollHandled(long durationNanos) {
+    handler.add(durationNanos);
+    if (listener != null) {
+      listener.onScrollHandled(durationNanos);
+    }
+  }
+
+  /**
+   * The toolbar was updated once for the given number of scroll events received within a frame, taking
+   * durationNanos.
+   */
+  void onScrollEventsApplied(int events, long durationNanos) {
+    scrollEvents += events;
+    scrollUpdates++;
+    update.add(durationNanos);
+    if (listener != null) {
+      listener.onScrollApplied(events, durationNanos);
+    }
+  }
+
+  void onAnimationCancelled() {
+    animationCancellations++;
+    if (listener != null) {
+      listener.onAnimationCancelled();
+    }
+  }
+
+  /**
+   * Frames are only watched while the list scrolls or the toolbar animates, idle time isn't jank.
+   */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  void setFrameMonitoring(boolean monitoring) {
+    if (this.monitoring == monitoring || !AndroidUtils.isJellyBean()) {
+      return;
+    }
+    this.monitoring = monitoring;
+    Choreographer choreographer = Choreographer.getInstance();
+    if (monitoring) {
+      lastFrameTimeNanos = 0;
+      choreographer.postFrameCallback(getFrameCallback());
+    } else {
+      choreographer.removeFrameCallback(getFrameCallback());
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  private Choreographer.FrameCallback getFrameCallback() {
+    // Created lazily and typed as Object in the field so this class still loads before Jelly Bean
+    if (frameCallback == null) {
+      frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+          onFrame(frameTimeNanos);
+          if (monitoring) {
+            Choreographer.getInstance().postFrameCallback(this);
+          }
+        }
+      };
+    }
+    return (Choreographer.FrameCallback) frameCallback;
+  }
+
+  private void onFrame(long frameTimeNanos) {
+    if (lastFrameTimeNanos != 0) {
+      long interval = frameTimeNanos - lastFrameTimeNanos;
+      frames++;
+      if (interval > frameBudgetNanos) {
+        framesOverBudget++;
+        framesSkipped += interval / frameBudgetNanos - 1;
+        if (listener != null) {
+          listener.onFrameOverBudget(interval);
+        }
+      }
+    }
+    lastFrameTimeNanos = frameTimeNanos;
+  }
+
+  public long getHandlerCount() {
+    return handler.count;
+  }
+
+  public long getUpdateCount() {
+    return update.count;
+  }
+
+  public long getFrames() {
+    return frames;
+  }
+
+  public long getFramesOverBudget() {
+    return framesOverBudget;
+  }
+
+  public long getFramesSkipped() {
+    return framesSkipped;
+  }
+
+  public long getAnimationCancellations() {
+    return animationCancellations;
+  }
+
+  public long getScrollEvents() {
+    return scrollEvents;
+  }
+
+  /**
+   * Scroll events that were merged into another one's toolbar update instead of getting their own.
+   */
+  public long getScrollEventsMerged() {
+    return scrollEvents - scrollUpdates;
+  }
+
+  public void reset() {
+    handler.reset();
+    update.reset();
+    frames = 0;
+    framesOverBudget = 0;
+    framesSkipped = 0;
+    animationCancellations = 0;
+    scrollEvents = 0;
+    scrollUpdates = 0;
+  }
+
+  public void dump(PrintWriter pw) {
+    handler.dump(pw, "Scroll handler");
+    update.dump(pw, "Toolbar update");
+    pw.println("Frames: count=" + frames + " overBudget=" + framesOverBudget + " skipped=" + framesSkipped
+        + " budgetUs=" + frameBudgetNanos / 1000);
+    pw.println("Scroll events: count=" + scrollEvents + " toolbarUpdates=" + scrollUpdates
+        + " merged=" + (scrollEvents - scrollUpdates));
+    pw.println("Toolbar animation cancellations: " + animationCancellations);
+    pw.flush();
+  }
+
+  public void dumpToLog() {
+    StringWriter sw = new StringWriter();
+    dump(new PrintWriter(sw));
+    for (String line : sw.toString().split("\n")) {
+      Log.i(TAG, line);
+    }
+  }
+
+  public void dumpToFile(File file) throws IOException {
+    PrintWriter pw = new PrintWriter(new FileWriter(file, true));
+    try {
+      pw.println("--- " + System.currentTimeMillis());
+      dump(pw);
+    } finally {
+      pw.close();
+    }
+  }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compact binary traces of the scroll events seen by RecyclerViewUtils.ShowHideToolbarOnScrollingListener, and a
+ * deterministic replayer that feeds them through ShowHideToolbarEngine on a plain JVM.
+ * <p/>
+ * A trace starts with a 4 bytes magic and a version byte, followed by events. Each event is a type byte, the time
+ * since the previous event in microseconds and its payload, all numbers written as zigzag varints:
+ * <ul>
+ * <li>HEIGHT: the toolbar height, only written when it changes.</li>
+ * <li>SCROLLED: dx, dy and the drift of the vertical offset from the previous offset plus dy (usually 0).</li>
+ * <li>FRAME: the toolbar was updated for the SCROLLED events since the previous FRAME, the listener does it once
+ * per frame with their summed dy. Payload: the drift of the offset the engine got from the previous one (usually
+ * 0).</li>
+ * <li>STATE: the new RecyclerView scroll state, recorded after any pending scroll events have been applied.</li>
+ * <li>FLING: the distance a fling was predicted to scroll, see the listener's setFlingPrediction(). It decides
+ * where the toolbar settles, scroll events are ignored until the fling ends or the list is dragged again.</li>
+ * </ul>
+ */
+public final class ScrollTrace {
+  private static final int MAGIC = 0x53545243; // STRC
+  private static final int VERSION = 3;
+
+  private static final int EVENT_HEIGHT = 1;
+  private static final int EVENT_SCROLLED = 2;
+  private static final int EVENT_STATE = 3;
+  private static final int EVENT_FRAME = 4;
+  private static final int EVENT_FLING = 5;
+
+  // Mirror RecyclerView.SCROLL_STATE_*, the replayer can't depend on Android classes
+  private static final int SCROLL_STATE_IDLE = 0;
+  private static final int SCROLL_STATE_DRAGGING = 1;
+
+  /**
+   * Writes scroll events to an output stream. It buffers on its own and doesn't allocate per event, so it can stay
+   * attached to the scroll listener while flinging. I/O errors don't propagate to the caller, they stop the
+   * recording and are available through getError().
+   */
+  public static final class Recorder {
+    private final OutputStream out;
+    private final byte[] buffer = new byte[8192];
+    private int count;
+    private int toolbarHeight = -1;
+    private int verticalOffset;
+    private long lastEventNanos;
+    private IOException error;
+
+    public Recorder(OutputStream out) {
+      this.out = out;
+      writeInt(MAGIC);
+      writeByte(VERSION);
+      lastEventNanos = System.nanoTime();
+    }
+
+    public void onScrolled(int dx, int dy, int verticalOffset, int toolbarHeight) {
+      if (toolbarHeight != this.toolbarHeight) {
+        writeEventHeader(EVENT_HEIGHT);
+        writeVarint(this.toolbarHeight = toolbarHeight);
+      }
+      writeEventHeader(EVENT_SCROLLED);
+      writeVarint(dx);
+      writeVarint(dy);
+      writeVarint(verticalOffset - (this.verticalOffset + dy));
+      this.verticalOffset = verticalOffset;
+    }
+
+    /**
+     * The engine was given the scroll events since the previous frame at once, with verticalOffset.
+     */
+    public void onFrame(int verticalOffset) {
+      writeEventHeader(EVENT_FRAME);
+      writeVarint(verticalOffset - this.verticalOffset);
+      this.verticalOffset = verticalOffset;
+    }
+
+    public void onScrollStateChanged(int newState) {
+      writeEventHeader(EVENT_STATE);
+      writeVarint(newState);
+    }
+
+    /**
+     * The fling that just started was predicted to scroll the list by distance pixels, negative when scrolling up.
+     */
+    public void onFling(int distance) {
+      writeEventHeader(EVENT_FLING);
+      writeVarint(distance);
+    }
+
+    public void flush() {
+      if (error == null && count > 0) {
+        try {
+          out.write(buffer, 0, count);
+          out.flush();
+        } catch (IOException e) {
+          error = e;
+        }
+      }
+      count = 0;
+    }
+
+    public void close() {
+      flush();
+      try {
+        out.close();
+      } catch (IOException e) {
+        if (error == null) {
+          error = e;
+        }
+      }
+    }
+
+    public IOException getError() {
+      return error;
+    }
+
+    private void writeEventHeader(int type) {
+      long now = System.nanoTime();
+      writeByte(type);
+      writeVarint((int) Math.min(Integer.MAX_VALUE, (now - lastEventNanos) / 1000));
+      lastEventNanos = now;
+    }
+
+    private void writeInt(int v) {
+      writeByte(v >>> 24);
+      writeByte(v >>> 16);
+      writeByte(v >>> 8);
+      writeByte(v);
+    }
+
+    private void writeVarint(int v) {
+      int zigzag = (v << 1) ^ (v >> 31);
+      while ((zigzag & ~0x7f) != 0) {
+        writeByte((zigzag & 0x7f) | 0x80);
+        zigzag >>>= 7;
+      }
+      writeByte(zigzag);
+    }
+
+    private void writeByte(int b) {
+      if (count == buffer.length) {
+        flush();
+      }
+      buffer[count++] = (byte) b;
+    }
+  }
+
+  /**
+   * Outcome of replaying a trace.
+   */
+  public static final class Result {
+    // Number of events in the trace, how many of them were scroll events, and how many frames applied them
+    public int events;
+    public int scrollEvents;
+    public int frames;
+    // Final toolbar state
+    public int verticalOffset;
+    public float translationY;
+    public float elevation;
+    public int toolbarHeight;
+    // Last settle decision taken when scrolling went idle, see ShowHideToolbarEngine.SETTLE_*
+    public int lastSettle = ShowHideToolbarEngine.SETTLE_NONE;
+    // Time spent in the engine
+    public long totalNanos;
+    public long maxEventNanos;
+    // Wall time covered by the trace as recorded on the device
+    public long recordedMicros;
+
+    void addEventTime(long nanos) {
+      totalNanos += nanos;
+      maxEventNanos = Math.max(maxEventNanos, nanos);
+    }
+
+    public double nanosPerEvent() {
+      return events == 0 ? 0 : (double) totalNanos / events;
+    }
+
+    @Override
+    public String toString() {
+      return "events=" + events + " (scrolled=" + scrollEvents + " frames=" + frames + ")"
+          + " verticalOffset=" + verticalOffset
+          + " translationY=" + translationY
+          + " elevation=" + elevation
+          + " toolbarHeight=" + toolbarHeight
+          + " lastSettle=" + lastSettle
+          + " nsPerEvent=" + String.format("%.1f", nanosPerEvent())
+          + " maxEventNs=" + maxEventNanos
+          + " recordedMs=" + recordedMicros / 1000;
+    }
+  }
+
+  /**
+   * Feeds a trace through a fresh ShowHideToolbarEngine, calling it once per recorded frame with the summed dy of
+   * its scroll events like the listener does. Scrolling going idle is resolved as if the hide/show animation had
+   * already completed, so the result is the state the toolbar ends up in. Predicted flings go through
+   * ShowHideToolbarEngine.onFling() and settle the toolbar right away, the same way.
+   */
+  public static Result replay(InputStream in, float toolbarElevation) throws IOException {
+    in = new BufferedInputStream(in);
+    if (readInt(in) != MAGIC) {
+      throw new IOException("Not a scroll trace");
+    }
+    int version = readByte(in);
+    if (version != VERSION) {
+      throw new IOException("Unsupported scroll trace version " + version);
+    }
+
+    ShowHideToolbarEngine engine = new ShowHideToolbarEngine(toolbarElevation);
+    Result result = new Result();
+    int verticalOffset = 0;
+    // Scroll events not applied by a frame yet
+    int pendingDy = 0;
+    // Where the current predicted fling leaves the toolbar, SETTLE_NONE if there's no such fling
+    int flingSettle = ShowHideToolbarEngine.SETTLE_NONE;
+    int type;
+    while ((type = in.read()) != -1) {
+      result.recordedMicros += readVarint(in);
+      long start;
+      switch (type) {
+        case EVENT_HEIGHT:
+          result.toolbarHeight = readVarint(in);
+          break;
+        case EVENT_SCROLLED:
+          readVarint(in); // dx, not used by the engine
+          int dy = readVarint(in);
+          verticalOffset += dy + readVarint(in);
+          pendingDy += dy;
+          result.scrollEvents++;
+          break;
+        case EVENT_FRAME:
+          verticalOffset += readVarint(in);
+          start = System.nanoTime();
+          engine.onScrolled(verticalOffset, pendingDy, result.toolbarHeight);
+          result.addEventTime(System.nanoTime() - start);
+          pendingDy = 0;
+          result.frames++;
+          break;
+        case EVENT_STATE:
+          // Pending events were applied right before, any left were ignored by the listener
+          pendingDy = 0;
+          int newState = readVarint(in);
+          if (newState == SCROLL_STATE_DRAGGING) {
+            // Grabbing the list again takes over from any predicted fling
+            flingSettle = ShowHideToolbarEngine.SETTLE_NONE;
+          } else if (newState == SCROLL_STATE_IDLE && flingSettle != ShowHideToolbarEngine.SETTLE_NONE) {
+            // The toolbar is already where the fling was predicted to leave it
+            start = System.nanoTime();
+            engine.onFlingEnd(verticalOffset, engine.getTranslationY());
+            if (flingSettle == ShowHideToolbarEngine.SETTLE_SHOW) {
+              // The shown elevation depends on where the fling ended, e.g. flat at the top of the list
+              engine.setElevation(engine.getShownElevation());
+            }
+            result.addEventTime(System.nanoTime() - start);
+            flingSettle = ShowHideToolbarEngine.SETTLE_NONE;
+          } else if (newState == SCROLL_STATE_IDLE) {
+            start = System.nanoTime();
+            int settle = engine.onScrollIdle(result.toolbarHeight);
+            settle(engine, settle, result.toolbarHeight);
+            result.addEventTime(System.nanoTime() - start);
+            if (settle != ShowHideToolbarEngine.SETTLE_NONE) {
+              result.lastSettle = settle;
+            }
+          }
+          break;
+        case EVENT_FLING:
+          int distance = readVarint(in);
+          start = System.nanoTime();
+          flingSettle = engine.onFling(distance, result.toolbarHeight);
+          settle(engine, flingSettle, result.toolbarHeight);
+          result.addEventTime(System.nanoTime() - start);
+          if (flingSettle != ShowHideToolbarEngine.SETTLE_NONE) {
+            result.lastSettle = flingSettle;
+          }
+          break;
+        default:
+          throw new IOException("Unknown scroll trace event " + type);
+      }
+      result.events++;
+    }
+    result.verticalOffset = engine.getVerticalOffset();
+    result.translationY = engine.getTranslationY();
+    result.elevation = engine.getElevation();
+    return result;
+  }
+
+  /**
+   * Moves the toolbar to where a hide/show animation would have left it.
+   */
+  private static void settle(ShowHideToolbarEngine engine, int settle, int toolbarHeight) {
+    if (settle == ShowHideToolbarEngine.SETTLE_SHOW) {
+      engine.setTranslationY(0);
+      engine.setElevation(engine.getShownElevation());
+    } else if (settle == ShowHideToolbarEngine.SETTLE_HIDE) {
+      engine.setTranslationY(-toolbarHeight);
+      engine.setElevation(0);
+    }
+  }
+
+  private static int readInt(InputStream in) throws IOException {
+    return readByte(in) << 24 | readByte(in) << 16 | readByte(in) << 8 | readByte(in);
+  }
+
+  private static int readVarint(InputStream in) throws IOException {
+    int zigzag = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = readByte(in);
+      zigzag |= (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return (zigzag >>> 1) ^ -(zigzag & 1);
+  }
+
+  private static int readByte(InputStream in) throws IOException {
+    int b = in.read();
+    if (b == -1) {
+      throw new EOFException("Truncated scroll trace");
+    }
+    return b;
+  }
+
+  /**
+   * Replays the given trace files and prints their results, e.g. after pulling them from a device with adb.
+   */
+  public static void main(String[] args) throws IOException {
+    for (String path : args) {
+      InputStream in = new FileInputStream(path);
+      try {
+        // Same elevation ShowHideToolbarOnScrollingListener uses
+        System.out.println(path + ": " + replay(in, 14f));
+      } finally {
+        in.close();
+      }
+    }
+  }
+
+  private ScrollTrace() {
+  }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import java.util.Arrays;
+
+/**
+ * Case-insensitive search index over the items of a PageLoader, built once and then queried many times. Queries
+ * match anywhere in the item through a trigram index. For 3 or more characters the posting lists of the query
+ * trigrams are intersected and the few remaining candidates verified against the loader. Shorter queries are found
+ * in the trigrams themselves: every item posted under a trigram containing the query matches, along with the items
+ * too short to have a trigram that contain it.
+ * <p/>
+ * Everything is kept in primitive arrays, the items themselves stay in the loader: sorted trigrams with the offsets
+ * of their posting lists into one array of item positions, and the positions of the items shorter than a trigram.
+ * <p/>
+ * Building and querying are meant to run on a background thread, both stop early when the thread is interrupted.
+ * Plain Java, no Android dependencies.
+ */
+public final class SearchIndex {
+  private static final int[] NO_MATCHES = new int[0];
+  private static final int TRIGRAM = 3;
+  // Items are read from the loader in chunks of this size while building
+  private static final int BUILD_CHUNK = 1024;
+  // Candidates closer than this to each other are read from the loader in a single page while verifying
+  private static final int VERIFY_SPAN = 32;
+
+  private final PageLoader loader;
+  private final int count;
+  // Distinct trigrams in ascending order, the postings of trigrams[i] are positions[starts[i]..starts[i + 1])
+  private final long[] trigrams;
+  private final int[] starts;
+  // Ascending item positions of every posting list, one after the other
+  private final int[] positions;
+  // Ascending positions of the items shorter than a trigram, which aren't posted anywhere
+  private final int[] shortItems;
+
+  private SearchIndex(PageLoader loader, int count, long[] trigrams, int[] starts, int[] positions,
+      int[] shortItems) {
+    this.loader = loader;
+    this.count = count;
+    this.trigrams = trigrams;
+    this.starts = starts;
+    this.positions = positions;
+    this.shortItems = shortItems;
+  }
+
+  /**
+   * Builds the index over every item of the loader, reading them twice: once to count the postings of every
+   * trigram, once to fill them in. Returns null if the thread got interrupted.
+   */
+  public static SearchIndex build(PageLoader loader) {
+    int count = loader.getCount();
+    int[] shortItems = new int[16];
+    int shortItemCount = 0;
+    TrigramTable table = new TrigramTable();
+    for (int start = 0; start < count; start += BUILD_CHUNK) {
+      if (Thread.currentThread().isInterrupted()) {
+        return null;
+      }
+      String[] chunk = loader.loadPage(start, Math.min(BUILD_CHUNK, count - start));
+      for (int i = 0; i < chunk.length; i++) {
+        int position = start + i;
+        String item = chunk[i] == null ? "" : chunk[i];
+        if (item.length() < TRIGRAM) {
+          if (shortItemCount == shortItems.length) {
+            shortItems = Arrays.copyOf(shortItems, shortItemCount * 2);
+          }
+          shortItems[shortItemCount++] = position;
+        }
+        for (int j = 0; j + TRIGRAM <= item.length(); j++) {
+          table.count(trigram(item, j), position);
+        }
+      }
+    }
+    shortItems = Arrays.copyOf(shortItems, shortItemCount);
+
+    // Lay the posting lists out in trigram order
+    long[] trigrams = table.sortedKeys();
+    int[] starts = new int[trigrams.length + 1];
+    for (int i = 0; i < trigrams.length; i++) {
+      int slot = table.slotOf(trigrams[i]);
+      starts[i + 1] = starts[i] + table.values[slot];
+      // From now on the table maps a trigram to where its next posting goes
+      table.values[slot] = starts[i];
+      table.lastPositions[slot] = -1;
+    }
+
+    int[] positions = new int[starts[trigrams.length]];
+    for (int start = 0; start < count; start += BUILD_CHUNK) {
+      if (Thread.currentThread().isInterrupted()) {
+        return null;
+      }
+      String[] chunk = loader.loadPage(start, Math.min(BUILD_CHUNK, count - start));
+      for (int i = 0; i < chunk.length; i++) {
+        int position = start + i;
+        String item = chunk[i] == null ? "" : chunk[i];
+        for (int j = 0; j + TRIGRAM <= item.length(); j++) {
+          int slot = table.slotOf(trigram(item, j));
+          // A trigram repeated in the same item is posted once
+          if (table.lastPositions[slot] != position) {
+            table.lastPositions[slot] = position;
+            positions[table.values[slot]++] = position;
+          }
+        }
+      }
+    }
+    return new SearchIndex(loader, count, trigrams, starts, positions, shortItems);
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the ascending positions of the items matching query, or null if the thread got interrupted. An empty
+   * query matches everything.
+   */
+  public int[] search(String query) {
+    String q = normalize(query);
+    if (q.length() == 0) {
+      int[] all = new int[count];
+      for (int i = 0; i < all.length; i++) {
+        all[i] = i;
+      }
+      return all;
+    }
+    return q.length() < TRIGRAM ? searchShort(q) : searchSubstring(q);
+  }
+
+  private int[] searchShort(String q) {
+    // Items found so far, one bit per position, so those posted under several matching trigrams count once
+    long[] matched = new long[(count + 63) >>> 6];
+    for (int i = 0; i < trigrams.length; i++) {
+      if ((i & 0xFFF) == 0 && Thread.currentThread().isInterrupted()) {
+        return null;
+      }
+      if (trigramContains(trigrams[i], q)) {
+        for (int j = starts[i]; j < starts[i + 1]; j++) {
+          matched[positions[j] >>> 6] |= 1L << positions[j];
+        }
+      }
+    }
+    int[] candidates = shortItems.clone();
+    int size = verify(candidates, candidates.length, q);
+    if (size < 0) {
+      return null;
+    }
+    for (int i = 0; i < size; i++) {
+      matched[candidates[i] >>> 6] |= 1L << candidates[i];
+    }
+
+    int matchCount = 0;
+    for (long word : matched) {
+      matchCount += Long.bitCount(word);
+    }
+    int[] matches = new int[matchCount];
+    int n = 0;
+    for (int i = 0; i < matched.length; i++) {
+      for (long word = matched[i]; word != 0; word &= word - 1) {
+        matches[n++] = (i << 6) + Long.numberOfTrailingZeros(word);
+      }
+    }
+    return matches;
+  }
+
+  private int[] searchSubstring(String q) {
+    // Start from the rarest trigram of the query, it bounds the number of candidates
+    int trigramCount = q.length() - TRIGRAM + 1;
+    int[] lists = new int[trigramCount];
+    int rarest = 0;
+    for (int i = 0; i < trigramCount; i++) {
+      int list = Arrays.binarySearch(trigrams, trigram(q, i));
+      if (list < 0) {
+        return NO_MATCHES;
+      }
+      lists[i] = list;
+      if (sizeOf(list) < sizeOf(lists[rarest])) {
+        rarest = i;
+      }
+    }
+
+    int[] candidates = Arrays.copyOfRange(positions, starts[lists[rarest]], starts[lists[rarest] + 1]);
+    if (trigramCount == 1) {
+      // The query is the trigram itself, every item posted under it matches
+      return candidates;
+    }
+    int size = candidates.length;
+    for (int i = 0; i < trigramCount && size > 0; i++) {
+      if (Thread.currentThread().isInterrupted()) {
+        return null;
+      }
+      if (i != rarest) {
+        size = intersect(candidates, size, positions, starts[lists[i]], starts[lists[i] + 1]);
+      }
+    }
+
+    // Having every trigram doesn't mean having them in sequence, verify the remaining candidates
+    int matches = verify(candidates, size, q);
+    return matches < 0 ? null : Arrays.copyOf(candidates, matches);
+  }
+
+  /**
+   * Keeps in the first size candidates, ascending positions, only the items containing q. Returns how many are
+   * left, or -1 if the thread got interrupted.
+   */
+  private int verify(int[] candidates, int size, String q) {
+    int matches = 0;
+    for (int i = 0; i < size; ) {
+      if (Thread.currentThread().isInterrupted()) {
+        return -1;
+      }
+      // Read nearby candidates together
+      int first = candidates[i];
+      int end = i + 1;
+      while (end < size && candidates[end] - first < VERIFY_SPAN) {
+        end++;
+      }
+      String[] page = loader.loadPage(first, candidates[end - 1] - first + 1);
+      for (; i < end; i++) {
+        if (contains(page[candidates[i] - first], q)) {
+          candidates[matches++] = candidates[i];
+        }
+      }
+    }
+    return matches;
+  }
+
+  private int sizeOf(int list) {
+    return starts[list + 1] - starts[list];
+  }
+
+  /**
+   * Keeps in the first size values of a only those also found in b[from..to), both ascending. Returns the new size.
+   */
+  private static int intersect(int[] a, int size, int[] b, int from, int to) {
+    int kept = 0;
+    int j = from;
+    for (int i = 0; i < size && j < to; i++) {
+      int value = a[i];
+      while (j < to && b[j] < value) {
+        j++;
+      }
+      if (j < to && b[j] == value) {
+        a[kept++] = value;
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Whether item, lower-cased char by char, contains the already lower-cased q.
+   */
+  private static boolean contains(String item, String q) {
+    if (item == null) {
+      return false;
+    }
+    for (int i = 0; i + q.length() <= item.length(); i++) {
+      int j = 0;
+      while (j < q.length() && Character.toLowerCase(item.charAt(i + j)) == q.charAt(j)) {
+        j++;
+      }
+      if (j == q.length()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Lower-cases char by char, the same way items are indexed and verified.
+   */
+  private static String normalize(String s) {
+    if (s == null) {
+      return "";
+    }
+    char[] chars = new char[s.length()];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(s.charAt(i));
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Whether trigram contains q, already lower-cased and shorter than a trigram.
+   */
+  private static boolean trigramContains(long trigram, String q) {
+    char first = (char) (trigram >>> 32);
+    char second = (char) (trigram >>> 16);
+    char third = (char) trigram;
+    char c = q.charAt(0);
+    if (q.length() == 1) {
+      return first == c || second == c || third == c;
+    }
+    char d = q.charAt(1);
+    return first == c && second == d || second == c && third == d;
+  }
+
+  private static long trigram(String s, int start) {
+    return ((long) Character.toLowerCase(s.charAt(start)) << 32)
+        | ((long) Character.toLowerCase(s.charAt(start + 1)) << 16)
+        | Character.toLowerCase(s.charAt(start + 2));
+  }
+
+  /**
+   * Open-addressing hash table from trigram to an int, used while building: first the number of items containing
+   * the trigram, then where its next posting goes. Tracks the last item seen with each trigram so repeats within an
+   * item count once.
+   */
+  private static final class TrigramTable {
+    // Trigrams are never negative, so this marks a free slot
+    private static final long FREE = -1;
+
+    long[] keys = newKeys(1 << 12);
+    int[] values = new int[keys.length];
+    int[] lastPositions = new int[keys.length];
+    int size;
+
+    private static long[] newKeys(int capacity) {
+      long[] keys = new long[capacity];
+      Arrays.fill(keys, FREE);
+      return keys;
+    }
+
+    void count(long trigram, int position) {
+      int slot = slotOf(trigram);
+      if (keys[slot] == FREE) {
+        keys[slot] = trigram;
+        lastPositions[slot] = -1;
+        if (++size > keys.length / 2) {
+          grow();
+          slot = slotOf(trigram);
+        }
+      }
+      if (lastPositions[slot] != position) {
+        lastPositions[slot] = position;
+        values[slot]++;
+      }
+    }
+
+    /**
+     * Slot holding trigram, or the free slot it would go in.
+     */
+    int slotOf(long trigram) {
+      int mask = keys.length - 1;
+      long hash = trigram * 0x9E3779B97F4A7C15L;
+      int slot = (int) (hash ^ (hash >>> 32)) & mask;
+      while (keys[slot] != FREE && keys[slot] != trigram) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    long[] sortedKeys() {
+      long[] sorted = new long[size];
+      int n = 0;
+      for (long key : keys) {
+        if (key != FREE) {
+          sorted[n++] = key;
+        }
+      }
+      Arrays.sort(sorted);
+      return sorted;
+    }
+
+    private void grow() {
+      long[] oldKeys = keys;
+      int[] oldValues = values;
+      int[] oldLastPositions = lastPositions;
+      keys = newKeys(oldKeys.length * 2);
+      values = new int[keys.length];
+      lastPositions = new int[keys.length];
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != FREE) {
+          int slot = slotOf(oldKeys[i]);
+          keys[slot] = oldKeys[i];
+          values[slot] = oldValues[i];
+          lastPositions[slot] = oldLastPositions[i];
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs type-to-filter queries against a SearchIndex on a worker thread. The index is built in the background on the
+ * first query, so lists nobody searches never pay for it, and queries issued before it's ready simply wait for it. A
+ * new query cancels the one in flight, and only the results of the latest query reach the Callback, on the main
+ * thread.
+ */
+public final class Searcher {
+  /**
+   * Receives the ascending positions of the matching items, or null when the query is empty (no filter).
+   */
+  public interface Callback {
+    void onSearchResults(String query, int[] positions);
+  }
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final PageLoader loader;
+  private final Callback callback;
+  // Whether the index build was queued, main thread only
+  private boolean indexRequested;
+  // Only touched by the worker thread, the build task always runs before any query
+  private SearchIndex index;
+  private Future<?> pending;
+  // Bumped on every query so stale results are dropped
+  private int generation;
+
+  public Searcher(PageLoader loader, Callback callback) {
+    this.loader = loader;
+    this.callback = callback;
+  }
+
+  public void search(final String query) {
+    if (pending != null) {
+      pending.cancel(true);
+      pending = null;
+    }
+    final int generation = ++this.generation;
+    if (query == null || query.length() == 0) {
+      callback.onSearchResults(query, null);
+      return;
+    }
+    if (!indexRequested) {
+      indexRequested = true;
+      // Not a cancellable Future, newer queries must not interrupt the build
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          index = SearchIndex.build(loader);
+        }
+      });
+    }
+    pending = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        if (index == null) {
+          return;
+        }
+        final int[] positions = index.search(query);
+        if (positions == null) {
+          return;
+        }
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            if (generation == Searcher.this.generation) {
+              pending = null;
+              callback.onSearchResults(query, positions);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  public void release() {
+    generation++;
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import java.util.Arrays;
+
+/**
+ * Alphabetical sections of a sorted list: the first position of every initial letter, built once so jumping to a
+ * section is a table lookup. Items not starting with a letter A-Z fall in a leading "#" section.
+ * Plain Java, no Android dependencies.
+ */
+public final class SectionIndex {
+  private static final int LETTERS = 26;
+  // Items are read from the loader in chunks of this size while building
+  private static final int BUILD_CHUNK = 1024;
+
+  // Labels and first positions of the sections present in the data, in list order
+  private final String[] labels;
+  private final int[] positions;
+
+  private SectionIndex(String[] labels, int[] positions) {
+    this.labels = labels;
+    this.positions = positions;
+  }
+
+  /**
+   * Builds the index from sorted data. Meant to run on a background thread.
+   */
+  public static SectionIndex build(PageLoader loader) {
+    int count = loader.getCount();
+    // Slot 0 is "#", slots 1-26 are A-Z
+    int[] first = new int[LETTERS + 1];
+    Arrays.fill(first, -1);
+    for (int start = 0; start < count; start += BUILD_CHUNK) {
+      String[] chunk = loader.loadPage(start, Math.min(BUILD_CHUNK, count - start));
+      for (int i = 0; i < chunk.length; i++) {
+        int slot = slotOf(chunk[i]);
+        if (first[slot] < 0) {
+          first[slot] = start + i;
+        }
+      }
+    }
+
+    int sections = 0;
+    for (int position : first) {
+      if (position >= 0) {
+        sections++;
+      }
+    }
+    String[] labels = new String[sections];
+    int[] positions = new int[sections];
+    int section = 0;
+    for (int slot = 0; slot <= LETTERS; slot++) {
+      if (first[slot] >= 0) {
+        labels[section] = slot == 0 ? "#" : String.valueOf((char) ('A' + slot - 1));
+        positions[section++] = first[slot];
+      }
+    }
+    return new SectionIndex(labels, positions);
+  }
+
+  private static int slotOf(String item) {
+    if (item == null || item.length() == 0) {
+      return 0;
+    }
+    char c = Character.toUpperCase(item.charAt(0));
+    return c >= 'A' && c <= 'Z' ? c - 'A' + 1 : 0;
+  }
+
+  public int getSectionCount() {
+    return labels.length;
+  }
+
+  public String getLabel(int section) {
+    return labels[section];
+  }
+
+  /**
+   * First data position of the section.
+   */
+  public int getPosition(int section) {
+    return positions[section];
+  }
+
+  /**
+   * Section the data position falls in.
+   */
+  public int getSectionForPosition(int position) {
+    int index = Arrays.binarySearch(positions, position);
+    return index >= 0 ? index : Math.max(0, -index - 2);
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+/**
+ * Hide/show Toolbar math behind RecyclerViewUtils.ShowHideToolbarOnScrollingListener. It only deals with plain
+ * numbers (no Android classes) so it can be exercised and benchmarked on a regular JVM.
+ */
+public final class ShowHideToolbarEngine {
+  // What to do with the toolbar once scrolling settles
+  public static final int SETTLE_NONE = 0;
+  public static final int SETTLE_SHOW = 1;
+  public static final int SETTLE_HIDE = 2;
+
+  // When scrolling up, the toolbar hides only if more than this fraction of it is already hidden
+  private static final double HIDE_THRESHOLD = 0.6;
+
+  // Fling deceleration constants, same as the framework's Scroller/OverScroller spline
+  private static final double DECELERATION_RATE = Math.log(0.78) / Math.log(0.9);
+  private static final double INFLEXION = 0.35;
+  // Drag samples kept to estimate the fling velocity, and how far back they're looked at
+  private static final int DRAG_SAMPLES = 8;
+  private static final long DRAG_SAMPLE_WINDOW_NANOS = 100000000;
+
+  // The elevation of the toolbar when content is scrolled behind
+  private final float toolbarElevation;
+  // Keeps track of the overall vertical offset in the list
+  private int verticalOffset;
+  // Determines the scroll UP/DOWN offset
+  private int scrollingOffset;
+  // Toolbar values
+  private float translationY;
+  private float elevation;
+  // Ring buffer of recent drag samples
+  private final long[] sampleTimes = new long[DRAG_SAMPLES];
+  private final int[] sampleOffsets = new int[DRAG_SAMPLES];
+  private int sampleCount;
+  private int sampleIndex;
+
+  public ShowHideToolbarEngine(float toolbarElevation) {
+    this.toolbarElevation = toolbarElevation;
+  }
+
+  /**
+   * Updates the toolbar translation/elevation for a scroll step of dy pixels that left the list at verticalOffset.
+   */
+  public void onScrolled(int verticalOffset, int dy, int toolbarHeight) {
+    this.verticalOffset = verticalOffset;
+    scrollingOffset = dy;
+    int toolbarYOffset = (int) (dy - translationY);
+    if (scrollingOffset > 0) {
+      if (toolbarYOffset < toolbarHeight) {
+        if (verticalOffset > toolbarHeight) {
+          elevation = toolbarElevation;
+        }
+        translationY = -toolbarYOffset;
+      } else {
+        elevation = 0;
+        translationY = -toolbarHeight;
+      }
+    } else if (scrollingOffset < 0) {
+      if (toolbarYOffset < 0) {
+        if (verticalOffset <= 0) {
+          elevation = 0;
+        }
+        translationY = 0;
+      } else {
+        if (verticalOffset > toolbarHeight) {
+          elevation = toolbarElevation;
+        }
+        translationY = -toolbarYOffset;
+      }
+    }
+  }
+
+  /**
+   * Decides whether the toolbar should be fully shown or hidden once scrolling has stopped.
+   */
+  public int onScrollIdle(int toolbarHeight) {
+    if (scrollingOffset > 0) {
+      return verticalOffset > toolbarHeight ? SETTLE_HIDE : SETTLE_SHOW;
+    } else if (scrollingOffset < 0) {
+      return translationY < toolbarHeight * -HIDE_THRESHOLD && verticalOffset > toolbarHeight
+          ? SETTLE_HIDE : SETTLE_SHOW;
+    }
+    return SETTLE_NONE;
+  }
+
+  /**
+   * Decides up front whether the toolbar should end up shown or hidden after a fling predicted to scroll the list
+   * by distance pixels (negative when scrolling back up), the same way onScrollIdle() would once it stops.
+   */
+  public int onFling(int distance, int toolbarHeight) {
+    if (distance > 0) {
+      return verticalOffset + distance > toolbarHeight ? SETTLE_HIDE : SETTLE_SHOW;
+    } else if (distance < 0) {
+      int endOffset = Math.max(0, verticalOffset + distance);
+      float endTranslationY = Math.min(0, translationY - distance);
+      return endTranslationY < toolbarHeight * -HIDE_THRESHOLD && endOffset > toolbarHeight
+          ? SETTLE_HIDE : SETTLE_SHOW;
+    }
+    return SETTLE_NONE;
+  }
+
+  /**
+   * Puts the engine back in sync once a fling whose outcome was decided by onFling() has stopped.
+   */
+  public void onFlingEnd(int verticalOffset, float translationY) {
+    this.verticalOffset = verticalOffset;
+    this.translationY = translationY;
+    scrollingOffset = 0;
+  }
+
+  public void clearDragSamples() {
+    sampleCount = 0;
+  }
+
+  /**
+   * Records where the list was at a point in time while being dragged, see getDragVelocity().
+   */
+  public void addDragSample(long timeNanos, int verticalOffset) {
+    sampleTimes[sampleIndex] = timeNanos;
+    sampleOffsets[sampleIndex] = verticalOffset;
+    sampleIndex = (sampleIndex + 1) % DRAG_SAMPLES;
+    sampleCount = Math.min(sampleCount + 1, DRAG_SAMPLES);
+  }
+
+  /**
+   * Velocity of the drag over its last samples in pixels per second, positive when scrolling down.
+   */
+  public float getDragVelocity() {
+    if (sampleCount < 2) {
+      return 0;
+    }
+    int last = (sampleIndex + DRAG_SAMPLES - 1) % DRAG_SAMPLES;
+    int first = last;
+    for (int i = 1; i < sampleCount; i++) {
+      int index = (last + DRAG_SAMPLES - i) % DRAG_SAMPLES;
+      if (sampleTimes[last] - sampleTimes[index] > DRAG_SAMPLE_WINDOW_NANOS) {
+        break;
+      }
+      first = index;
+    }
+    long dt = sampleTimes[last] - sampleTimes[first];
+    return dt <= 0 ? 0 : (sampleOffsets[last] - sampleOffsets[first]) * 1e9f / dt;
+  }
+
+  /**
+   * How far a fling at velocity (pixels per second) travels before stopping, following the framework's fling
+   * spline. physicalCoeff folds the gravity constant and the screen density, see ViewConfiguration/OverScroller.
+   */
+  public static double getFlingDistance(float velocity, double friction, double physicalCoeff) {
+    double l = Math.log(INFLEXION * Math.abs(velocity) / (friction * physicalCoeff));
+    return friction * physicalCoeff * Math.exp(DECELERATION_RATE / (DECELERATION_RATE - 1.0) * l);
+  }
+
+  /**
+   * The elevation the toolbar should have once it's fully shown.
+   */
+  public float getShownElevation() {
+    return verticalOffset == 0 ? 0 : toolbarElevation;
+  }
+
+  /**
+   * Puts the toolbar straight in its final state after a jump that didn't go through regular scrolling, e.g. a
+   * fast-scroll to a section. It's only shown when the jump landed at the top of the list, so it's flat either way.
+   */
+  public void snap(boolean hidden, int toolbarHeight) {
+    if (!hidden) {
+      verticalOffset = 0;
+    }
+    scrollingOffset = 0;
+    translationY = hidden ? -toolbarHeight : 0;
+    elevation = 0;
+  }
+
+  public void restore(int verticalOffset, int scrollingOffset, float translationY, float elevation) {
+    this.verticalOffset = verticalOffset;
+    this.scrollingOffset = scrollingOffset;
+    this.translationY = translationY;
+    this.elevation = elevation;
+  }
+
+  public int getVerticalOffset() {
+    return verticalOffset;
+  }
+
+  public int getScrollingOffset() {
+    return scrollingOffset;
+  }
+
+  public float getTranslationY() {
+    return translationY;
+  }
+
+  /**
+   * Syncs the translation with the toolbar, which may have been moved by a hide/show animation.
+   */
+  public void setTranslationY(float translationY) {
+    this.translationY = translationY;
+  }
+
+  public float getElevation() {
+    return elevation;
+  }
+
+  public void setElevation(float elevation) {
+    this.elevation = elevation;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.os.Process;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timeline of named startup sections and marks, relative to the moment the tracer was created. Sections can be
+ * recorded from any thread and may overlap, e.g. data loading in the background while the layout is inflated.
+ * <p/>
+ * Create it first thing in onCreate(), then bracket the interesting work with begin()/end() and call
+ * watchFirstFrame() to get the first layout pass and the first frame on the timeline as well.
+ */
+public final class StartupTracer {
+  private static final String TAG = "StartupTracer";
+
+  public static final String FIRST_LAYOUT = "first layout";
+  public static final String FIRST_FRAME = "first frame";
+
+  private static final class Entry {
+    final String name;
+    final String thread;
+    final long startNanos;
+    long endNanos = -1;
+
+    Entry(String name, String thread, long startNanos) {
+      this.name = name;
+      this.thread = thread;
+      this.startNanos = startNanos;
+    }
+  }
+
+  private final long startNanos = System.nanoTime();
+  // CPU time the process spent before we got a chance to start tracing
+  private final long processCpuMillis = Process.getElapsedCpuTime();
+  private final List<Entry> entries = new ArrayList<Entry>();
+
+  /**
+   * Starts the section called name on the calling thread.
+   */
+  public synchronized void begin(String name) {
+    entries.add(new Entry(name, Thread.currentThread().getName(), System.nanoTime()));
+  }
+
+  /**
+   * Ends the latest open section called name.
+   */
+  public synchronized void end(String name) {
+    long now = System.nanoTime();
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      Entry entry = entries.get(i);
+      if (entry.endNanos < 0 && entry.name.equals(name)) {
+        entry.endNanos = now;
+        return;
+      }
+    }
+    Log.w(TAG, "Section " + name + " ended but never started");
+  }
+
+  /**
+   * Records an instant on the timeline.
+   */
+  public synchronized void mark(String name) {
+    Entry entry = new Entry(name, Thread.currentThread().getName(), System.nanoTime());
+    entry.endNanos = entry.startNanos;
+    entries.add(entry);
+  }
+
+  /**
+   * Marks FIRST_LAYOUT once view has been laid out and FIRST_FRAME once it has been drawn, then runs
+   * onFirstFrame (if any) on the main thread.
+   */
+  public void watchFirstFrame(final View view, final Runnable onFirstFrame) {
+    view.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
+      @SuppressWarnings("deprecation")
+      @Override
+      public void onGlobalLayout() {
+        view.getViewTreeObserver().removeGlobalOnLayoutListener(this);
+        mark(FIRST_LAYOUT);
+      }
+    });
+    view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+      @Override
+      public boolean onPreDraw() {
+        view.getViewTreeObserver().removeOnPreDrawListener(this);
+        // Runs once the traversal that is about to draw has finished
+        view.post(new Runnable() {
+          @Override
+          public void run() {
+            mark(FIRST_FRAME);
+            if (onFirstFrame != null) {
+              onFirstFrame.run();
+            }
+          }
+        });
+        return true;
+      }
+    });
+  }
+
+  public synchronized void dump(PrintWriter pw) {
+    pw.println("Startup: processCpuMsBeforeTrace=" + processCpuMillis);
+    for (Entry entry : entries) {
+      long startMicros = (entry.startNanos - startNanos) / 1000;
+      if (entry.endNanos < 0) {
+        pw.println("  " + startMicros + "us " + entry.name + " [" + entry.thread + "] (not ended)");
+      } else if (entry.endNanos == entry.startNanos) {
+        pw.println("  " + startMicros + "us " + entry.name + " [" + entry.thread + "]");
+      } else {
+        pw.println("  " + startMicros + "us " + entry.name + " [" + entry.thread + "] took "
+            + (entry.endNanos - entry.startNanos) / 1000 + "us");
+      }
+    }
+    pw.flush();
+  }
+
+  public void dumpToLog() {
+    StringWriter sw = new StringWriter();
+    dump(new PrintWriter(sw));
+    for (String line : sw.toString().split("\n")) {
+      Log.i(TAG, line);
+    }
+  }
+
+  public void dumpToFile(File file) throws IOException {
+    PrintWriter pw = new PrintWriter(new FileWriter(file, true));
+    try {
+      pw.println("--- " + System.currentTimeMillis());
+      dump(pw);
+    } finally {
+      pw.close();
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.text.Layout;
+import android.text.TextPaint;
+
+import com.tinbytes.samples.showhidetoolbar.widget.LayoutTextView;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fixed-size cache of text Layouts by item position for the current width, filled ahead of time on a background
+ * thread so binding rows while flinging doesn't measure any text. Items are expected to be immutable per position.
+ * It's direct-mapped on the position: a row only evicts the one maxEntries positions away, so the rows around the
+ * visible ones never evict each other, and lookups don't box a key.
+ * <p/>
+ * Except for the background builds, everything runs on the main thread.
+ */
+public final class TextLayoutCache {
+  public static final int DEFAULT_MAX_ENTRIES = 256;
+
+  // Slot position % maxEntries holds the layout of positions[slot], null if none. Guarded by this
+  private final int[] positions;
+  private final Layout[] layouts;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  // Text appearance the layouts are built with, the paint is a private copy for the background thread. It's replaced,
+  // never changed, since built layouts keep drawing with it
+  private volatile TextPaint paint;
+  private volatile int width;
+  // Number of prefetches requested so far, builds overtaken by too many newer requests are out of date and skipped
+  private volatile int prefetchCount;
+  private volatile int maxPrefetchAge = Integer.MAX_VALUE;
+  private int hits;
+  private int misses;
+
+  public TextLayoutCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  public TextLayoutCache(int maxEntries) {
+    positions = new int[maxEntries];
+    layouts = new Layout[maxEntries];
+  }
+
+  /**
+   * Sets the paint and content width layouts are built for, the text color included. Layouts for another width or
+   * color are dropped.
+   */
+  public void setTextAppearance(TextPaint paint, int width) {
+    if (width == this.width && this.paint != null && paint.getColor() == this.paint.getColor()) {
+      return;
+    }
+    this.paint = new TextPaint(paint);
+    this.width = width;
+    evictAll();
+  }
+
+  /**
+   * Queued builds are skipped once more than age newer prefetches have been requested, e.g. when flinging past
+   * the rows they were meant for.
+   */
+  public void setMaxPrefetchAge(int age) {
+    maxPrefetchAge = age;
+  }
+
+  public Layout get(int position) {
+    Layout layout = width > 0 ? lookup(position, width) : null;
+    if (layout != null) {
+      hits++;
+    } else {
+      misses++;
+    }
+    return layout;
+  }
+
+  public void put(int position, Layout layout) {
+    store(position, layout);
+  }
+
+  /**
+   * Builds the layout for text at position in the background, unless it's already cached.
+   */
+  public void prefetch(final int position, final CharSequence text) {
+    final int width = this.width;
+    if (width <= 0 || lookup(position, width) != null) {
+      return;
+    }
+    final int sequence = ++prefetchCount;
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (width != TextLayoutCache.this.width
+            || prefetchCount - sequence > maxPrefetchAge
+            || lookup(position, width) != null) {
+          return;
+        }
+        store(position, LayoutTextView.buildLayout(text, paint, width));
+      }
+    });
+  }
+
+  public int getHits() {
+    return hits;
+  }
+
+  public int getMisses() {
+    return misses;
+  }
+
+  public void release() {
+    executor.shutdownNow();
+    evictAll();
+  }
+
+  private synchronized Layout lookup(int position, int width) {
+    int slot = position % layouts.length;
+    Layout layout = layouts[slot];
+    return layout != null && positions[slot] == position && layout.getWidth() == width ? layout : null;
+  }
+
+  /**
+   * Caches layout unless it was built for another width than the current one, e.g. by a build still running when
+   * the width changed.
+   */
+  private synchronized void store(int position, Layout layout) {
+    if (layout.getWidth() == width) {
+      int slot = position % layouts.length;
+      positions[slot] = position;
+      layouts[slot] = layout;
+    }
+  }
+
+  private synchronized void evictAll() {
+    Arrays.fill(layouts, null);
+  }
+}
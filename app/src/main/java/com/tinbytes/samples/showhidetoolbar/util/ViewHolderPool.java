@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+/**
+ * Process-wide RecycledViewPool shared by every screen showing the same view types, plus idle-time pre-warming so
+ * the first scroll doesn't have to inflate rows while the toolbar starts animating.
+ * <p/>
+ * Holders outlive the screen that created them, so adapters using this pool must not inflate rows with an Activity
+ * context. All methods must be called from the main thread.
+ */
+public final class ViewHolderPool {
+  private static final String TAG = "ViewHolderPool";
+  // Same as RecycledViewPool's own default max per view type
+  private static final int DEFAULT_MAX_RECYCLED = 5;
+
+  private static ViewHolderPool instance;
+
+  private final RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+  // Max holders kept per view type, grown to fit pre-warming requests, never shrunk
+  private final SparseIntArray maxRecycled = new SparseIntArray();
+  // Holders per view type still to be created by queued pre-warming requests
+  private final SparseIntArray pendingPrewarms = new SparseIntArray();
+  // Whether the adapter is creating a holder on our behalf
+  private boolean prewarming;
+  private int prewarmed;
+  private int created;
+  private int reused;
+
+  public static ViewHolderPool getInstance() {
+    if (instance == null) {
+      instance = new ViewHolderPool();
+    }
+    return instance;
+  }
+
+  private ViewHolderPool() {
+  }
+
+  /**
+   * Makes recyclerView use the shared pool. Call it before setting its adapter.
+   */
+  public void attach(RecyclerView recyclerView) {
+    recyclerView.setRecycledViewPool(pool);
+  }
+
+  /**
+   * Gives recyclerView's rows back to the shared pool, e.g. when its screen is destroyed.
+   */
+  public void detach(RecyclerView recyclerView) {
+    recyclerView.setAdapter(null);
+  }
+
+  /**
+   * Creates up to count holders of viewType through recyclerView's adapter, one per main thread idle slot, and
+   * parks them in the shared pool. The pool's max for viewType grows to count if needed, and requests still queued
+   * count against it: the pool drops whatever it has no room for, so creating more would only waste inflations.
+   */
+  public void prewarm(final RecyclerView recyclerView, final int viewType, final int count) {
+    int max = Math.max(count, maxRecycled.get(viewType, DEFAULT_MAX_RECYCLED));
+    maxRecycled.put(viewType, max);
+    pool.setMaxRecycledViews(viewType, max);
+    int pending = pendingPrewarms.get(viewType);
+    final int requested = Math.min(count, max - pending);
+    if (requested <= 0) {
+      return;
+    }
+    pendingPrewarms.put(viewType, pending + requested);
+    Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+      private int remaining = requested;
+
+      @Override
+      public boolean queueIdle() {
+        RecyclerView.Adapter adapter = recyclerView.getAdapter();
+        if (adapter == null) {
+          pendingPrewarms.put(viewType, pendingPrewarms.get(viewType) - remaining);
+          return false;
+        }
+        prewarming = true;
+        try {
+          pool.putRecycledView(adapter.createViewHolder(recyclerView, viewType));
+        } finally {
+          prewarming = false;
+        }
+        prewarmed++;
+        pendingPrewarms.put(viewType, pendingPrewarms.get(viewType) - 1);
+        return --remaining > 0;
+      }
+    });
+  }
+
+  /**
+   * Adapters call this from onCreateViewHolder(). Returns whether the holder is being created for pre-warming.
+   */
+  public boolean onHolderCreated() {
+    if (!prewarming) {
+      created++;
+    }
+    return prewarming;
+  }
+
+  /**
+   * Adapters call this from onBindViewHolder() for holders that didn't come straight from onCreateViewHolder().
+   */
+  public void onHolderReused() {
+    reused++;
+  }
+
+  public int getPrewarmedCount() {
+    return prewarmed;
+  }
+
+  public int getCreatedCount() {
+    return created;
+  }
+
+  public int getReusedCount() {
+    return reused;
+  }
+
+  public void dumpToLog() {
+    Log.i(TAG, "prewarmed=" + prewarmed + " created=" + created + " reused=" + reused);
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.widget;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.tinbytes.samples.showhidetoolbar.R;
+
+/**
+ * Fast-scroll thumb and section bubble meant to overlay a RecyclerView. Dragging along the right edge picks one of
+ * the sections given to setSections(), the Callback then jumps the list straight there. Touches elsewhere fall
+ * through to the list below.
+ */
+public class FastScroller extends View {
+  /**
+   * Notified on every section picked while dragging.
+   */
+  public interface Callback {
+    void onSectionSelected(int section);
+  }
+
+  private final Paint thumbPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Paint bubblePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Paint bubbleTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final int touchWidth;
+  private final int thumbWidth;
+  private final int thumbHeight;
+  private final int bubbleRadius;
+
+  private String[] sections;
+  private Callback callback;
+  private RecyclerView recyclerView;
+  // Thumb position as a fraction of the track
+  private float thumbFraction;
+  private boolean dragging;
+  private int currentSection = -1;
+
+  private final RecyclerView.OnScrollListener scrollListener = new RecyclerView.OnScrollListener() {
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+      if (!dragging) {
+        updateThumbFromList();
+      }
+    }
+  };
+
+  public FastScroller(Context context) {
+    this(context, null);
+  }
+
+  public FastScroller(Context context, AttributeSet attrs) {
+    super(context, attrs);
+    thumbWidth = dp(6);
+    thumbHeight = dp(48);
+    touchWidth = dp(32);
+    bubbleRadius = dp(40);
+    int color = getResources().getColor(R.color.app_accent);
+    thumbPaint.setColor(color);
+    bubblePaint.setColor(color);
+    bubbleTextPaint.setColor(0xffffffff);
+    bubbleTextPaint.setTextAlign(Paint.Align.CENTER);
+    bubbleTextPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 36,
+        getResources().getDisplayMetrics()));
+    setVisibility(GONE);
+  }
+
+  private int dp(int value) {
+    return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value, getResources().getDisplayMetrics());
+  }
+
+  public void attachToRecyclerView(RecyclerView recyclerView) {
+    if (this.recyclerView != null) {
+      this.recyclerView.removeOnScrollListener(scrollListener);
+    }
+    this.recyclerView = recyclerView;
+    recyclerView.addOnScrollListener(scrollListener);
+  }
+
+  public void setCallback(Callback callback) {
+    this.callback = callback;
+  }
+
+  /**
+   * Labels of the sections to pick from, the scroller only shows up once there are some.
+   */
+  public void setSections(String[] sections) {
+    this.sections = sections;
+    setVisibility(sections != null && sections.length > 1 ? VISIBLE : GONE);
+    updateThumbFromList();
+  }
+
+  private void updateThumbFromList() {
+    if (recyclerView == null || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+      return;
+    }
+    int count = recyclerView.getAdapter() != null ? recyclerView.getAdapter().getItemCount() : 0;
+    int first = ((LinearLayoutManager) recyclerView.getLayoutManager()).findFirstVisibleItemPosition();
+    float fraction = count <= 1 || first < 0 ? 0 : (float) first / (count - 1);
+    if (fraction != thumbFraction) {
+      thumbFraction = fraction;
+      invalidate();
+    }
+  }
+
+  @Override
+  public boolean onTouchEvent(MotionEvent event) {
+    if (sections == null || sections.length == 0) {
+      return false;
+    }
+    switch (event.getActionMasked()) {
+      case MotionEvent.ACTION_DOWN:
+        if (event.getX() < getWidth() - touchWidth) {
+          return false;
+        }
+        dragging = true;
+        getParent().requestDisallowInterceptTouchEvent(true);
+        // Fall through
+      case MotionEvent.ACTION_MOVE:
+        if (dragging) {
+          onDrag(event.getY());
+        }
+        return dragging;
+      case MotionEvent.ACTION_UP:
+      case MotionEvent.ACTION_CANCEL:
+        if (dragging) {
+          dragging = false;
+          currentSection = -1;
+          invalidate();
+          return true;
+        }
+        return false;
+    }
+    return dragging;
+  }
+
+  private void onDrag(float y) {
+    int track = getHeight() - getPaddingTop() - getPaddingBottom();
+    thumbFraction = Math.max(0, Math.min(1, (y - getPaddingTop()) / Math.max(1, track)));
+    int section = Math.min(sections.length - 1, (int) (thumbFraction * sections.length));
+    if (section != currentSection) {
+      currentSection = section;
+      if (callback != null) {
+        callback.onSectionSelected(section);
+      }
+    }
+    invalidate();
+  }
+
+  @Override
+  protected void onDraw(Canvas canvas) {
+    int track = getHeight() - getPaddingTop() - getPaddingBottom() - thumbHeight;
+    float thumbTop = getPaddingTop() + thumbFraction * track;
+    float right = getWidth() - getPaddingRight();
+    canvas.drawRect(right - thumbWidth, thumbTop, right, thumbTop + thumbHeight, thumbPaint);
+    if (dragging && currentSection >= 0) {
+      float cx = right - touchWidth - bubbleRadius;
+      float cy = Math.max(bubbleRadius, thumbTop + thumbHeight / 2);
+      canvas.drawCircle(cx, cy, bubbleRadius, bubblePaint);
+      canvas.drawText(sections[currentSection], cx,
+          cy - (bubbleTextPaint.descent() + bubbleTextPaint.ascent()) / 2, bubbleTextPaint);
+    }
+  }
+}
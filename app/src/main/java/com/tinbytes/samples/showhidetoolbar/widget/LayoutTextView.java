@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.widget;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.widget.TextView;
+
+import com.tinbytes.samples.showhidetoolbar.R;
+
+/**
+ * Minimal read-only text view that draws a text Layout. The Layout can be built ahead of time (e.g. on a background
+ * thread, see TextLayoutCache) and handed over with setLayout(), so binding a row doesn't measure any text. With
+ * setText() it behaves like a plain TextView and builds its Layout while measuring. Accessibility services see it
+ * as a TextView with its text.
+ */
+public class LayoutTextView extends View {
+  private final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+  private ColorStateList textColors;
+  private CharSequence text = "";
+  private Layout layout;
+
+  public LayoutTextView(Context context) {
+    this(context, null);
+  }
+
+  public LayoutTextView(Context context, AttributeSet attrs) {
+    this(context, attrs, 0);
+  }
+
+  public LayoutTextView(Context context, AttributeSet attrs, int defStyleAttr) {
+    super(context, attrs, defStyleAttr);
+    TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.LayoutTextView, defStyleAttr, 0);
+    paint.density = getResources().getDisplayMetrics().density;
+    paint.setTextSize(a.getDimension(R.styleable.LayoutTextView_android_textSize,
+        TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 14, getResources().getDisplayMetrics())));
+    textColors = a.getColorStateList(R.styleable.LayoutTextView_android_textColor);
+    a.recycle();
+    if (textColors == null) {
+      // Same default as TextView, the theme's primary text color
+      TypedArray theme = context.obtainStyledAttributes(new int[]{android.R.attr.textColorPrimary});
+      textColors = theme.getColorStateList(0);
+      theme.recycle();
+    }
+    updateTextColor();
+    setWillNotDraw(false);
+  }
+
+  /**
+   * Builds the Layout this view would use for text at the given content width, safe to call on any thread as long
+   * as paint isn't shared with another thread.
+   */
+  public static Layout buildLayout(CharSequence text, TextPaint paint, int width) {
+    return new StaticLayout(text, paint, Math.max(0, width), Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+  }
+
+  /**
+   * The paint used to draw text, background builders should work on a copy of it and never change the copy once
+   * builds use it.
+   */
+  public TextPaint getPaint() {
+    return paint;
+  }
+
+  /**
+   * Width available for text, known once the view has been measured, 0 before.
+   */
+  public int getContentWidth() {
+    return Math.max(0, getMeasuredWidth() - getPaddingLeft() - getPaddingRight());
+  }
+
+  public CharSequence getText() {
+    return text;
+  }
+
+  public void setText(int resId) {
+    setText(getResources().getText(resId));
+  }
+
+  public void setText(CharSequence text) {
+    if (text == null) {
+      text = "";
+    }
+    if (layout != null && TextUtils.equals(this.text, text)) {
+      return;
+    }
+    this.text = text;
+    layout = null;
+    requestLayout();
+    invalidate();
+  }
+
+  /**
+   * Shows a Layout built ahead of time, its width should match getContentWidth() or it gets rebuilt on measure.
+   */
+  public void setLayout(Layout layout) {
+    boolean sameHeight = this.layout != null && this.layout.getHeight() == layout.getHeight();
+    this.text = layout.getText();
+    this.layout = layout;
+    if (!sameHeight) {
+      requestLayout();
+    }
+    invalidate();
+  }
+
+  @Override
+  protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+    int width = MeasureSpec.getSize(widthMeasureSpec);
+    if (MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED) {
+      width = (int) Math.ceil(Layout.getDesiredWidth(text, paint)) + getPaddingLeft() + getPaddingRight();
+    }
+    int contentWidth = Math.max(0, width - getPaddingLeft() - getPaddingRight());
+    if (layout == null || layout.getWidth() != contentWidth) {
+      layout = buildLayout(text, paint, contentWidth);
+    }
+    int height = getPaddingTop() + layout.getHeight() + getPaddingBottom();
+    setMeasuredDimension(width, resolveSize(Math.max(height, getSuggestedMinimumHeight()), heightMeasureSpec));
+  }
+
+  @Override
+  protected void onDraw(Canvas canvas) {
+    if (layout != null) {
+      // Layouts built ahead of time draw with a copy of our paint, which may still be in use by a background build,
+      // so it's never changed here. One built for another text color, e.g. before the row was pressed, is rebuilt
+      if (layout.getPaint() != paint && layout.getPaint().getColor() != paint.getColor()) {
+        layout = buildLayout(text, paint, layout.getWidth());
+      }
+      canvas.save();
+      canvas.translate(getPaddingLeft(), getPaddingTop());
+      layout.draw(canvas);
+      canvas.restore();
+    }
+  }
+
+  @Override
+  protected void drawableStateChanged() {
+    super.drawableStateChanged();
+    if (updateTextColor()) {
+      invalidate();
+    }
+  }
+
+  @Override
+  public void onInitializeAccessibilityNodeInfo(AccessibilityNodeInfo info) {
+    super.onInitializeAccessibilityNodeInfo(info);
+    info.setClassName(TextView.class.getName());
+    info.setText(text);
+  }
+
+  @Override
+  public void onInitializeAccessibilityEvent(AccessibilityEvent event) {
+    super.onInitializeAccessibilityEvent(event);
+    event.setClassName(TextView.class.getName());
+  }
+
+  @Override
+  public void onPopulateAccessibilityEvent(AccessibilityEvent event) {
+    super.onPopulateAccessibilityEvent(event);
+    if (text.length() > 0) {
+      event.getText().add(text);
+    }
+  }
+
+  private boolean updateTextColor() {
+    int color = textColors != null ? textColors.getColorForState(getDrawableState(), textColors.getDefaultColor()) : 0;
+    if (color != paint.getColor()) {
+      paint.setColor(color);
+      return true;
+    }
+    return false;
+  }
+}
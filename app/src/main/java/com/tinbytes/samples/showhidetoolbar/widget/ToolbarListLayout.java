@@ -0,0 +1,250 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.widget;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+import android.support.v7.widget.Toolbar;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.tinbytes.samples.showhidetoolbar.util.ScrollLinkedViews;
+
+/**
+ * A Toolbar over a list, without the double measure pass of a RelativeLayout. The Toolbar child sits at the top,
+ * every other child (the list, a fast-scroller...) fills the layout with its top padding set to the measured
+ * toolbar height, so lists with clipToPadding="false" scroll under the toolbar. Each child is measured exactly once
+ * per pass, and setting the padding doesn't schedule another one.
+ * <p/>
+ * The toolbar slides through getLinkedViews(), which is reapplied whenever the toolbar's height changes once it has
+ * been used; a toolbar moved by other means is left alone. With setClipUnderToolbar() the other children don't draw
+ * under an opaque toolbar at all.
+ * <p/>
+ * setToolbarShadow() adds a shadow view right under the toolbar that follows it as it slides. It can be faded in and
+ * out by alpha instead of changing the toolbar's elevation, and looks the same on every API level.
+ */
+public class ToolbarListLayout extends ViewGroup {
+  private Toolbar toolbar;
+  // Slides the toolbar, and whatever is linked to it, out of the way
+  private final ScrollLinkedViews linkedViews = new ScrollLinkedViews();
+  // Toolbar height the hidden fraction was last applied with
+  private int toolbarHeight;
+  // Whether content under the toolbar is clipped out, and the clip top it was last drawn with
+  private boolean clipUnderToolbar;
+  private int clipTop;
+  // Optional shadow under the toolbar, null if none
+  private ShadowView shadow;
+
+  private final ScrollLinkedViews.Callback linkedViewsCallback = new ScrollLinkedViews.Callback() {
+    @Override
+    public void onHiddenFractionChanged(float hiddenFraction) {
+      if (shadow != null) {
+        shadow.setTranslationY(toolbar.getTranslationY());
+      }
+      // Moving the toolbar only updates its own display list properties, the clip is recorded in ours
+      if (clipUnderToolbar && getClipTop() != clipTop) {
+        invalidate();
+      }
+    }
+  };
+
+  /**
+   * Draws a shadow drawable, its alpha is applied directly instead of through an offscreen buffer.
+   */
+  private static final class ShadowView extends View {
+    ShadowView(Context context) {
+      super(context);
+    }
+
+    @Override
+    public boolean hasOverlappingRendering() {
+      return false;
+    }
+  }
+
+  public ToolbarListLayout(Context context) {
+    this(context, null);
+  }
+
+  public ToolbarListLayout(Context context, AttributeSet attrs) {
+    super(context, attrs);
+  }
+
+  @Override
+  protected void onFinishInflate() {
+    super.onFinishInflate();
+    for (int i = 0; i < getChildCount(); i++) {
+      if (getChildAt(i) instanceof Toolbar) {
+        toolbar = (Toolbar) getChildAt(i);
+        linkedViews.add(toolbar, ScrollLinkedViews.DIRECTION_UP);
+        linkedViews.addCallback(linkedViewsCallback);
+        return;
+      }
+    }
+    throw new IllegalStateException("ToolbarListLayout needs a Toolbar child");
+  }
+
+  public Toolbar getToolbar() {
+    return toolbar;
+  }
+
+  public ScrollLinkedViews getLinkedViews() {
+    return linkedViews;
+  }
+
+  /**
+   * When enabled, the other children are clipped to below the toolbar wherever it currently is, so rows behind an
+   * opaque toolbar aren't drawn only to be painted over. Has no effect while the toolbar isn't opaque.
+   */
+  public void setClipUnderToolbar(boolean clipUnderToolbar) {
+    if (this.clipUnderToolbar != clipUnderToolbar) {
+      this.clipUnderToolbar = clipUnderToolbar;
+      invalidate();
+    }
+  }
+
+  /**
+   * Shows drawable under the toolbar at its intrinsic height, or removes the shadow if null. It starts out
+   * transparent, fade it in through getToolbarShadow().
+   */
+  @SuppressWarnings("deprecation")
+  public void setToolbarShadow(Drawable drawable) {
+    if (shadow != null) {
+      removeView(shadow);
+      shadow = null;
+    }
+    if (drawable != null) {
+      shadow = new ShadowView(getContext());
+      shadow.setBackgroundDrawable(drawable);
+      shadow.setAlpha(0);
+      shadow.setTranslationY(toolbar.getTranslationY());
+      addView(shadow, new LayoutParams(LayoutParams.MATCH_PARENT, drawable.getIntrinsicHeight()));
+    }
+  }
+
+  /**
+   * The shadow view added by setToolbarShadow(), null if none.
+   */
+  public View getToolbarShadow() {
+    return shadow;
+  }
+
+  /**
+   * Top of the area not covered by the toolbar, or 0 if the toolbar can't be clipped out.
+   */
+  private int getClipTop() {
+    if (toolbar.getVisibility() != VISIBLE || toolbar.getAlpha() < 1) {
+      return 0;
+    }
+    Drawable background = toolbar.getBackground();
+    if (background == null || background.getOpacity() != PixelFormat.OPAQUE) {
+      return 0;
+    }
+    return Math.max(0, toolbar.getBottom() + Math.round(toolbar.getTranslationY()));
+  }
+
+  @Override
+  protected void dispatchDraw(Canvas canvas) {
+    if (clipUnderToolbar) {
+      clipTop = getClipTop();
+    }
+    super.dispatchDraw(canvas);
+  }
+
+  @Override
+  protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+    if (!clipUnderToolbar || clipTop == 0 || child == toolbar) {
+      return super.drawChild(canvas, child, drawingTime);
+    }
+    int saveCount = canvas.save();
+    canvas.clipRect(0, clipTop, getWidth(), getHeight());
+    boolean more = super.drawChild(canvas, child, drawingTime);
+    canvas.restoreToCount(saveCount);
+    return more;
+  }
+
+  @Override
+  protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+    int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+    int height = getDefaultSize(getSuggestedMinimumHeight(), heightMeasureSpec);
+    setMeasuredDimension(width, height);
+    int contentWidth = Math.max(0, width - getPaddingLeft() - getPaddingRight());
+    int contentHeight = Math.max(0, height - getPaddingTop() - getPaddingBottom());
+
+    // Toolbar first, its height is the top inset of everything else
+    LayoutParams lp = toolbar.getLayoutParams();
+    toolbar.measure(
+        getChildMeasureSpec(MeasureSpec.makeMeasureSpec(contentWidth, MeasureSpec.EXACTLY), 0, lp.width),
+        getChildMeasureSpec(MeasureSpec.makeMeasureSpec(contentHeight, MeasureSpec.AT_MOST), 0, lp.height));
+    int inset = toolbar.getVisibility() == GONE ? 0 : toolbar.getMeasuredHeight();
+
+    int contentWidthSpec = MeasureSpec.makeMeasureSpec(contentWidth, MeasureSpec.EXACTLY);
+    int contentHeightSpec = MeasureSpec.makeMeasureSpec(contentHeight, MeasureSpec.EXACTLY);
+    for (int i = 0; i < getChildCount(); i++) {
+      View child = getChildAt(i);
+      if (child == toolbar || child.getVisibility() == GONE) {
+        continue;
+      }
+      if (child == shadow) {
+        shadow.measure(contentWidthSpec, MeasureSpec.makeMeasureSpec(shadow.getLayoutParams().height,
+            MeasureSpec.EXACTLY));
+        continue;
+      }
+      if (child.getPaddingTop() != inset) {
+        // setPadding() requests a layout, which goes up the tree until it meets a view that already has one pending.
+        // Flagging ourselves stops it here instead of scheduling another traversal, we're measuring the child with
+        // its new padding and laying it out right after anyway
+        forceLayout();
+        child.setPadding(child.getPaddingLeft(), inset, child.getPaddingRight(), child.getPaddingBottom());
+      }
+      child.measure(contentWidthSpec, contentHeightSpec);
+    }
+  }
+
+  @Override
+  protected void onLayout(boolean changed, int l, int t, int r, int b) {
+    int left = getPaddingLeft();
+    int top = getPaddingTop();
+    int toolbarBottom = top + (toolbar.getVisibility() == GONE ? 0 : toolbar.getMeasuredHeight());
+    for (int i = 0; i < getChildCount(); i++) {
+      View child = getChildAt(i);
+      if (child.getVisibility() != GONE) {
+        // The shadow hangs off the bottom of the toolbar
+        int childTop = child == shadow ? toolbarBottom : top;
+        child.layout(left, childTop, left + child.getMeasuredWidth(), childTop + child.getMeasuredHeight());
+      }
+    }
+    // Translations are in pixels, a taller or shorter toolbar needs them recomputed
+    if (toolbar.getHeight() != toolbarHeight) {
+      toolbarHeight = toolbar.getHeight();
+      linkedViews.reapply();
+    }
+  }
+
+  @Override
+  protected LayoutParams generateDefaultLayoutParams() {
+    return new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
+  }
+
+  @Override
+  public boolean shouldDelayChildPressedState() {
+    return false;
+  }
+}
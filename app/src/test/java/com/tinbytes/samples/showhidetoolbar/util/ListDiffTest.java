@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Diffs random pairs of lists of distinct ids, applies the operations to the old list the way RecyclerView would
+ * and checks the result against the new list, and the number of edits against a longest common subsequence.
+ */
+public class ListDiffTest {
+  private static final int ROUNDS = 2000;
+  // Stands for an inserted item, whose id the operations don't carry
+  private static final Integer INSERTED = -1;
+
+  private static final class Lists implements ListDiff.SortedCallback {
+    final List<Integer> oldList;
+    final List<Integer> newList;
+
+    Lists(List<Integer> oldList, List<Integer> newList) {
+      this.oldList = oldList;
+      this.newList = newList;
+    }
+
+    @Override
+    public int getOldSize() {
+      return oldList.size();
+    }
+
+    @Override
+    public int getNewSize() {
+      return newList.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldPosition, int newPosition) {
+      return oldList.get(oldPosition).equals(newList.get(newPosition));
+    }
+
+    @Override
+    public int compare(int oldPosition, int newPosition) {
+      return oldList.get(oldPosition).compareTo(newList.get(newPosition));
+    }
+  }
+
+  /**
+   * Replays the operations on a copy of the old list, inserted items are INSERTED. Counts inserted and removed
+   * items, moves aside.
+   */
+  private static final class Applier implements ListDiff.UpdateCallback {
+    final List<Integer> items;
+    int edits;
+    int moves;
+
+    Applier(List<Integer> oldList) {
+      items = new ArrayList<Integer>(oldList);
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+      assertTrue(position >= 0 && position <= items.size());
+      for (int i = 0; i < count; i++) {
+        items.add(position, INSERTED);
+      }
+      edits += count;
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+      assertTrue(position >= 0 && position + count <= items.size());
+      items.subList(position, position + count).clear();
+      edits += count;
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+      items.add(toPosition, items.remove(fromPosition));
+      moves++;
+    }
+  }
+
+  /**
+   * A random edit of oldList: some items removed, new ones inserted, and with moves some shuffled around.
+   */
+  private static List<Integer> mutate(Random random, List<Integer> oldList, int nextId, boolean moves) {
+    List<Integer> newList = new ArrayList<Integer>(oldList);
+    for (int i = random.nextInt(6); i > 0 && !newList.isEmpty(); i--) {
+      newList.remove(random.nextInt(newList.size()));
+    }
+    for (int i = random.nextInt(6); i > 0; i--) {
+      newList.add(random.nextInt(newList.size() + 1), nextId++);
+    }
+    if (moves) {
+      for (int i = random.nextInt(4); i > 0 && !newList.isEmpty(); i--) {
+        newList.add(random.nextInt(newList.size()), newList.remove(random.nextInt(newList.size())));
+      }
+    }
+    return newList;
+  }
+
+  private static List<Integer> randomList(Random random, int maxSize) {
+    List<Integer> list = new ArrayList<Integer>();
+    for (int i = random.nextInt(maxSize + 1) - 1; i >= 0; i--) {
+      list.add(i);
+    }
+    Collections.shuffle(list, random);
+    return list;
+  }
+
+  private static int lcs(List<Integer> a, List<Integer> b) {
+    int[][] lengths = new int[a.size() + 1][b.size() + 1];
+    for (int i = 1; i <= a.size(); i++) {
+      for (int j = 1; j <= b.size(); j++) {
+        lengths[i][j] = a.get(i - 1).equals(b.get(j - 1))
+            ? lengths[i - 1][j - 1] + 1 : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+      }
+    }
+    return lengths[a.size()][b.size()];
+  }
+
+  /**
+   * The applied list must match the new list wherever an old item ended up, and have inserts everywhere else.
+   */
+  private static void assertApplied(Lists lists, Applier applier, boolean moves) {
+    assertEquals(lists.newList.size(), applier.items.size());
+    for (int i = 0; i < lists.newList.size(); i++) {
+      Integer item = applier.items.get(i);
+      if (item.equals(INSERTED)) {
+        // With moves, an item that was already there is never inserted again
+        assertTrue(!moves || !lists.oldList.contains(lists.newList.get(i)));
+      } else {
+        assertEquals(lists.newList.get(i), item);
+      }
+    }
+  }
+
+  @Test
+  public void computeTurnsOldIntoNew() {
+    Random random = new Random(42);
+    for (int round = 0; round < ROUNDS; round++) {
+      List<Integer> oldList = randomList(random, 30);
+      boolean moves = round % 2 == 0;
+      Lists lists = new Lists(oldList, mutate(random, oldList, 1000, moves));
+
+      ListDiff diff = ListDiff.compute(lists, moves);
+      assertNotNull(diff);
+      Applier applier = new Applier(oldList);
+      diff.dispatchUpdatesTo(applier);
+      assertApplied(lists, applier, moves);
+      if (!moves) {
+        // Minimal: every item of a longest common subsequence is kept
+        assertEquals(oldList.size() + lists.newList.size() - 2 * lcs(oldList, lists.newList), applier.edits);
+      }
+    }
+  }
+
+  @Test
+  public void computeWithMovesTurnsUnrelatedListsIntoEachOther() {
+    Random random = new Random(7);
+    for (int round = 0; round < ROUNDS; round++) {
+      Lists lists = new Lists(randomList(random, 20), randomList(random, 20));
+      ListDiff diff = ListDiff.compute(lists, true);
+      assertNotNull(diff);
+      Applier applier = new Applier(lists.oldList);
+      diff.dispatchUpdatesTo(applier);
+      assertApplied(lists, applier, true);
+    }
+  }
+
+  @Test
+  public void computeGivesUpPastMaxEdits() {
+    Random random = new Random(3);
+    for (int round = 0; round < ROUNDS; round++) {
+      List<Integer> oldList = randomList(random, 30);
+      Lists lists = new Lists(oldList, mutate(random, oldList, 1000, true));
+      int edits = oldList.size() + lists.newList.size() - 2 * lcs(oldList, lists.newList);
+      assertNotNull(ListDiff.compute(lists, false, edits));
+      if (edits > 0) {
+        assertNull(ListDiff.compute(lists, false, edits - 1));
+      }
+    }
+  }
+
+  @Test
+  public void computeSortedTurnsOldIntoNewAndGivesUpPastMaxEdits() {
+    Random random = new Random(11);
+    for (int round = 0; round < ROUNDS; round++) {
+      List<Integer> oldList = new ArrayList<Integer>();
+      List<Integer> newList = new ArrayList<Integer>();
+      int common = 0;
+      for (int id = random.nextInt(80); id >= 0; id--) {
+        boolean inOld = random.nextInt(3) > 0;
+        boolean inNew = random.nextInt(3) > 0;
+        if (inOld) {
+          oldList.add(0, id);
+        }
+        if (inNew) {
+          newList.add(0, id);
+        }
+        common += inOld && inNew ? 1 : 0;
+      }
+      Lists lists = new Lists(oldList, newList);
+      int edits = oldList.size() + newList.size() - 2 * common;
+
+      ListDiff diff = ListDiff.computeSorted(lists, edits);
+      assertNotNull(diff);
+      Applier applier = new Applier(oldList);
+      diff.dispatchUpdatesTo(applier);
+      assertApplied(lists, applier, true);
+      assertEquals(edits, applier.edits);
+      if (edits > 0) {
+        assertNull(ListDiff.computeSorted(lists, edits - 1));
+      }
+    }
+  }
+}
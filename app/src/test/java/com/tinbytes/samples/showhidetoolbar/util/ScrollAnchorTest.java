@@ -0,0 +1,257 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Restores a saved anchor on a list of a million rows the way the listener does, after rows moved, after a
+ * rotation changed row and toolbar heights and after the rows only loaded a few frames later, and checks where the
+ * toolbar ends up and how long it takes.
+ */
+public class ScrollAnchorTest {
+  private static final int ROWS = 1000000;
+  private static final int TOOLBAR_HEIGHT = 168;
+  // Toolbars are shorter in landscape
+  private static final int ROTATED_TOOLBAR_HEIGHT = 112;
+  private static final float ELEVATION = 14f;
+  // Far more than a restore needs, so only a restore that went back to walking or rebuilding everything per row fails
+  private static final long RESTORE_BUDGET_NANOS = 250 * 1000000L;
+
+  /**
+   * Stable IDs of a list, with rows inserted and removed the way an adapter would.
+   */
+  private static final class Ids implements ScrollAnchor.ItemIds {
+    long[] ids;
+    long nextId;
+
+    Ids(int count) {
+      ids = new long[count];
+      for (int i = 0; i < count; i++) {
+        ids[i] = nextId++;
+      }
+    }
+
+    void insert(int start, int count) {
+      long[] inserted = new long[ids.length + count];
+      System.arraycopy(ids, 0, inserted, 0, start);
+      System.arraycopy(ids, start, inserted, start + count, ids.length - start);
+      for (int i = start; i < start + count; i++) {
+        inserted[i] = nextId++;
+      }
+      ids = inserted;
+    }
+
+    void remove(int start, int count) {
+      long[] removed = new long[ids.length - count];
+      System.arraycopy(ids, 0, removed, 0, start);
+      System.arraycopy(ids, start + count, removed, start, ids.length - start - count);
+      ids = removed;
+    }
+
+    void move(int fromPosition, int toPosition) {
+      long id = ids[fromPosition];
+      remove(fromPosition, 1);
+      insert(toPosition, 1);
+      ids[toPosition] = id;
+    }
+
+    @Override
+    public int getCount() {
+      return ids.length;
+    }
+
+    @Override
+    public long getItemId(int position) {
+      return ids[position];
+    }
+  }
+
+  @Test
+  public void findPositionFollowsTheAnchorAcrossInsertsAndRemoves() {
+    Random random = new Random(42);
+    Ids ids = new Ids(ROWS);
+    for (int round = 0; round < 200; round++) {
+      int position = random.nextInt(ids.getCount());
+      long id = ids.getItemId(position);
+      // Rows inserted and removed before the anchor shift it, those after it don't
+      int shift = 0;
+      for (int change = random.nextInt(5); change > 0; change--) {
+        int count = 1 + random.nextInt(200);
+        if (random.nextBoolean()) {
+          int start = random.nextInt(ids.getCount() + 1);
+          ids.insert(start, count);
+          shift += start <= position + shift ? count : 0;
+        } else {
+          int start = random.nextInt(ids.getCount() - count);
+          if (start + count <= position + shift || start > position + shift) {
+            ids.remove(start, count);
+            shift -= start + count <= position + shift ? count : 0;
+          }
+        }
+      }
+      assertEquals(position + shift, ScrollAnchor.findPosition(ids, position, id));
+    }
+  }
+
+  @Test
+  public void findPositionFindsAnAnchorMovedAcrossTheList() {
+    Ids ids = new Ids(ROWS);
+    long id = ids.getItemId(ROWS - 1);
+    ids.move(ROWS - 1, 0);
+    // Worst case: all the other rows are looked at first
+    long start = System.nanoTime();
+    assertEquals(0, ScrollAnchor.findPosition(ids, ROWS - 1, id));
+    assertTrue(System.nanoTime() - start < RESTORE_BUDGET_NANOS);
+  }
+
+  @Test
+  public void findPositionKeepsTheSavedPositionWithinTheList() {
+    Ids ids = new Ids(ROWS);
+    // The anchor row is gone
+    ids.remove(500000, 1);
+    assertEquals(500000, ScrollAnchor.findPosition(ids, 500000, 500000));
+    // Nothing to look for
+    assertEquals(123, ScrollAnchor.findPosition(ids, 123, ScrollAnchor.NO_ID));
+    // The list got shorter than the saved position
+    ids.remove(1000, ids.getCount() - 1000);
+    assertEquals(999, ScrollAnchor.findPosition(ids, 500000, 500000));
+    ids.remove(0, ids.getCount());
+    assertEquals(0, ScrollAnchor.findPosition(ids, 500000, 500000));
+  }
+
+  @Test
+  public void restoreWaitsForRowsLoadedAfterTheFirstFrames() {
+    // Saved before the process was killed
+    int savedPosition = 700000;
+    long savedId = new Ids(ROWS).getItemId(savedPosition);
+    int anchorOffset = 20;
+    float fraction = ScrollAnchor.getHiddenFraction(-TOOLBAR_HEIGHT / 2, TOOLBAR_HEIGHT);
+    ScrollAnchor.Restore restore = new ScrollAnchor.Restore(savedPosition, savedId);
+
+    // The first frames are drawn while the data loads: no adapter, then an adapter without rows
+    for (int frame = 0; frame < 5; frame++) {
+      assertEquals(ScrollAnchor.Restore.WAIT, restore.onPreDraw(null));
+    }
+    assertEquals(ScrollAnchor.Restore.WAIT, restore.onPreDraw(new Ids(0)));
+
+    // The data arrives with rows inserted above the anchor since it was saved, so the list scrolls again
+    Ids loaded = new Ids(ROWS);
+    loaded.insert(1000, 25);
+    assertEquals(ScrollAnchor.Restore.SCROLL, restore.onPreDraw(loaded));
+    assertEquals(savedPosition + 25, restore.getPosition());
+
+    // Laid out at the anchor by the next frame, which puts the toolbar back against the loaded rows
+    assertEquals(ScrollAnchor.Restore.APPLY, restore.onPreDraw(loaded));
+    RowHeightIndex index = new RowHeightIndex();
+    index.reset(loaded.getCount());
+    for (int row = restore.getPosition(); row < restore.getPosition() + 10; row++) {
+      index.setHeight(row, 72);
+    }
+    ShowHideToolbarEngine engine = new ShowHideToolbarEngine(ELEVATION);
+    engine.restore(index.getOffset(restore.getPosition()) + anchorOffset, 0,
+        ScrollAnchor.getTranslationY(fraction, TOOLBAR_HEIGHT), ELEVATION);
+    assertEquals(72 * (savedPosition + 25) + anchorOffset, engine.getVerticalOffset());
+    assertEquals(-TOOLBAR_HEIGHT / 2, engine.getTranslationY(), 0);
+  }
+
+  @Test
+  public void restoreAppliesRightAwayWhenTheRowsAreAlreadyThere() {
+    Ids ids = new Ids(ROWS);
+    ScrollAnchor.Restore restore = new ScrollAnchor.Restore(123456, ids.getItemId(123456));
+    // The list was scrolled to the saved position when restoring, nothing moved
+    assertEquals(ScrollAnchor.Restore.APPLY, restore.onPreDraw(ids));
+    assertEquals(123456, restore.getPosition());
+
+    // Without stable IDs the saved position is kept, within a list that got shorter
+    restore = new ScrollAnchor.Restore(123456, ScrollAnchor.NO_ID);
+    ids.remove(1000, ids.getCount() - 1000);
+    assertEquals(ScrollAnchor.Restore.SCROLL, restore.onPreDraw(ids));
+    assertEquals(999, restore.getPosition());
+    assertEquals(ScrollAnchor.Restore.APPLY, restore.onPreDraw(ids));
+  }
+
+  @Test
+  public void hiddenFractionKeepsTheToolbarAsHiddenAcrossHeights() {
+    for (int hidden = 0; hidden <= TOOLBAR_HEIGHT; hidden++) {
+      float fraction = ScrollAnchor.getHiddenFraction(-hidden, TOOLBAR_HEIGHT);
+      // Same height: back to the same pixel
+      assertEquals(-hidden, ScrollAnchor.getTranslationY(fraction, TOOLBAR_HEIGHT), 0);
+      // Another height: the same share of it, within a pixel
+      float translationY = ScrollAnchor.getTranslationY(fraction, ROTATED_TOOLBAR_HEIGHT);
+      assertEquals(-hidden * ROTATED_TOOLBAR_HEIGHT / (float) TOOLBAR_HEIGHT, translationY, 0.5f);
+      assertTrue(translationY <= 0 && translationY >= -ROTATED_TOOLBAR_HEIGHT);
+    }
+    // Mid-animation overshoot and a toolbar not laid out yet
+    assertEquals(1, ScrollAnchor.getHiddenFraction(-TOOLBAR_HEIGHT - 10, TOOLBAR_HEIGHT), 0);
+    assertEquals(0, ScrollAnchor.getHiddenFraction(10, TOOLBAR_HEIGHT), 0);
+    assertEquals(0, ScrollAnchor.getHiddenFraction(-50, 0), 0);
+  }
+
+  @Test
+  public void restoreAfterRotationPutsTheToolbarBackAndKeepsScrollingContinuous() {
+    Random random = new Random(7);
+    Ids ids = new Ids(ROWS);
+    RowHeightIndex index = new RowHeightIndex();
+    long best = Long.MAX_VALUE;
+    for (int round = 0; round < 20; round++) {
+      // Saved in portrait: the anchor row, how far it's scrolled past the top, and part of the toolbar hidden
+      int savedPosition = ROWS / 2 + random.nextInt(ROWS / 4);
+      long savedId = ids.getItemId(savedPosition);
+      int anchorOffset = random.nextInt(60);
+      int hidden = 1 + random.nextInt(TOOLBAR_HEIGHT - 1);
+      float fraction = ScrollAnchor.getHiddenFraction(-hidden, TOOLBAR_HEIGHT);
+      ids.insert(random.nextInt(savedPosition), 1 + random.nextInt(50));
+
+      // Restored in landscape: rows are shorter and only those around the anchor are measured by the first layout
+      long start = System.nanoTime();
+      int position = ScrollAnchor.findPosition(ids, savedPosition, savedId);
+      index.reset(ids.getCount());
+      for (int row = Math.max(0, position - 5); row < Math.min(ids.getCount(), position + 10); row++) {
+        index.setHeight(row, 60 + row % 7);
+      }
+      int verticalOffset = index.getOffset(position) + anchorOffset;
+      float translationY = ScrollAnchor.getTranslationY(fraction, ROTATED_TOOLBAR_HEIGHT);
+      ShowHideToolbarEngine engine = new ShowHideToolbarEngine(ELEVATION);
+      engine.restore(verticalOffset, 0, translationY, ELEVATION);
+      best = Math.min(best, System.nanoTime() - start);
+
+      assertEquals(savedId, ids.getItemId(position));
+      // Rows above the measured ones count as the average measured height
+      int measuredAbove = 0;
+      for (int row = position - 5; row < position; row++) {
+        measuredAbove += 60 + row % 7;
+      }
+      assertEquals((position - 5) * index.getEstimatedHeight() + measuredAbove, index.getOffset(position));
+      assertEquals(verticalOffset, engine.getVerticalOffset());
+      assertEquals(translationY, engine.getTranslationY(), 0);
+      assertTrue(translationY < 0 && translationY > -ROTATED_TOOLBAR_HEIGHT);
+
+      // Scrolling on from there moves the toolbar pixel for pixel, with no jump from the restore
+      int dy = (int) Math.min(-translationY, 30);
+      engine.onScrolled(verticalOffset - dy, -dy, ROTATED_TOOLBAR_HEIGHT);
+      assertEquals(translationY + dy, engine.getTranslationY(), 0);
+      assertEquals(ELEVATION, engine.getElevation(), 0);
+    }
+    assertTrue("restore took " + best / 1000 + " us", best < RESTORE_BUDGET_NANOS);
+  }
+}
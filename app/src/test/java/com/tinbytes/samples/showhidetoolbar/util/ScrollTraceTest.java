@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Records scrolling the way the listener sees it and checks the replay ends up where the listener's engine did.
+ */
+public class ScrollTraceTest {
+  private static final int TOOLBAR_HEIGHT = 168;
+  private static final float ELEVATION = 14f;
+  private static final int STATE_IDLE = 0;
+  private static final int STATE_DRAGGING = 1;
+  private static final int STATE_SETTLING = 2;
+
+  /**
+   * Plays the listener: several scroll events per frame, the engine updated once per frame with their sum, and
+   * the toolbar settled when the list goes idle or as soon as a fling is predicted.
+   */
+  private static final class Session {
+    final ShowHideToolbarEngine engine = new ShowHideToolbarEngine(ELEVATION);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ScrollTrace.Recorder recorder = new ScrollTrace.Recorder(out);
+    int verticalOffset;
+    int pendingDy;
+    int pendingEvents;
+    int scrollEvents;
+    int frames;
+    int flingSettle = ShowHideToolbarEngine.SETTLE_NONE;
+
+    void onScrolled(int dy) {
+      verticalOffset = Math.max(0, verticalOffset + dy);
+      recorder.onScrolled(0, dy, verticalOffset, TOOLBAR_HEIGHT);
+      scrollEvents++;
+      // During a predicted fling the toolbar is already on its way, scroll events are ignored
+      if (flingSettle == ShowHideToolbarEngine.SETTLE_NONE) {
+        pendingDy += dy;
+        pendingEvents++;
+      }
+    }
+
+    void onFrame() {
+      if (pendingEvents == 0) {
+        return;
+      }
+      recorder.onFrame(verticalOffset);
+      engine.onScrolled(verticalOffset, pendingDy, TOOLBAR_HEIGHT);
+      pendingDy = 0;
+      pendingEvents = 0;
+      frames++;
+    }
+
+    void onScrollStateChanged(int newState) {
+      onFrame();
+      recorder.onScrollStateChanged(newState);
+      if (newState == STATE_DRAGGING) {
+        flingSettle = ShowHideToolbarEngine.SETTLE_NONE;
+      } else if (newState == STATE_IDLE && flingSettle != ShowHideToolbarEngine.SETTLE_NONE) {
+        engine.onFlingEnd(verticalOffset, engine.getTranslationY());
+        if (flingSettle == ShowHideToolbarEngine.SETTLE_SHOW) {
+          engine.setElevation(engine.getShownElevation());
+        }
+        flingSettle = ShowHideToolbarEngine.SETTLE_NONE;
+      } else if (newState == STATE_IDLE) {
+        settle(engine.onScrollIdle(TOOLBAR_HEIGHT));
+      }
+    }
+
+    void onFling(int distance) {
+      recorder.onFling(distance);
+      flingSettle = engine.onFling(distance, TOOLBAR_HEIGHT);
+      settle(flingSettle);
+    }
+
+    /**
+     * Where the hide/show animation leaves the toolbar.
+     */
+    void settle(int settle) {
+      switch (settle) {
+        case ShowHideToolbarEngine.SETTLE_SHOW:
+          engine.setTranslationY(0);
+          engine.setElevation(engine.getShownElevation());
+          break;
+        case ShowHideToolbarEngine.SETTLE_HIDE:
+          engine.setTranslationY(-TOOLBAR_HEIGHT);
+          engine.setElevation(0);
+          break;
+      }
+    }
+
+    ScrollTrace.Result replay() throws IOException {
+      recorder.close();
+      return ScrollTrace.replay(new ByteArrayInputStream(out.toByteArray()), ELEVATION);
+    }
+  }
+
+  @Test
+  public void replayAppliesScrollEventsOncePerFrameAndPredictsFlings() throws IOException {
+    Random random = new Random(42);
+    for (int round = 0; round < 100; round++) {
+      Session session = new Session();
+      for (int gesture = random.nextInt(10); gesture >= 0; gesture--) {
+        session.onScrollStateChanged(STATE_DRAGGING);
+        int direction = random.nextInt(3) == 0 ? -1 : 1;
+        for (int frame = 1 + random.nextInt(30); frame > 0; frame--) {
+          // Nested scrolling and layout adjustments can scroll several times per frame
+          for (int event = random.nextInt(4); event > 0; event--) {
+            session.onScrolled(direction * random.nextInt(50));
+          }
+          session.onFrame();
+        }
+        // Events can also reach the state change without a frame in between
+        session.onScrolled(direction * random.nextInt(50));
+        if (random.nextBoolean()) {
+          // Fling on, the toolbar settles right away and ignores the rest of the fling
+          session.onScrollStateChanged(STATE_SETTLING);
+          session.onFling(direction * random.nextInt(2000));
+          for (int frame = random.nextInt(30); frame > 0; frame--) {
+            session.onScrolled(direction * random.nextInt(80));
+            session.onFrame();
+          }
+        }
+        // The last gesture is still going on, so the toolbar may be anywhere
+        if (gesture > 0) {
+          session.onScrollStateChanged(STATE_IDLE);
+        } else {
+          session.onFrame();
+        }
+      }
+
+      ScrollTrace.Result result = session.replay();
+      assertEquals(session.scrollEvents, result.scrollEvents);
+      assertEquals(session.frames, result.frames);
+      assertEquals(session.engine.getVerticalOffset(), result.verticalOffset);
+      assertEquals(session.engine.getTranslationY(), result.translationY, 0);
+      assertEquals(session.engine.getElevation(), result.elevation, 0);
+    }
+  }
+
+  @Test
+  public void replayFlattensTheToolbarWhenAFlingEndsAtTheTop() throws IOException {
+    Session session = new Session();
+    session.onScrollStateChanged(STATE_DRAGGING);
+    for (int frame = 0; frame < 20; frame++) {
+      session.onScrolled(40);
+      session.onFrame();
+    }
+    session.onScrollStateChanged(STATE_IDLE);
+    assertEquals(0, session.engine.getElevation(), 0);
+
+    // Flung back up from a bit further down: the toolbar shows, elevated since the list isn't at the top yet
+    session.onScrollStateChanged(STATE_DRAGGING);
+    session.onScrolled(-30);
+    session.onFrame();
+    session.onScrollStateChanged(STATE_SETTLING);
+    session.onFling(-5000);
+    assertEquals(ELEVATION, session.engine.getElevation(), 0);
+    while (session.verticalOffset > 0) {
+      session.onScrolled(-100);
+      session.onFrame();
+    }
+    session.onScrollStateChanged(STATE_IDLE);
+
+    ScrollTrace.Result result = session.replay();
+    assertEquals(0, session.engine.getElevation(), 0);
+    assertEquals(0, result.verticalOffset);
+    assertEquals(0, result.translationY, 0);
+    assertEquals(0, result.elevation, 0);
+  }
+}
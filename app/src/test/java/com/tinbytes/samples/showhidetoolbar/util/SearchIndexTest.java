@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks SearchIndex against a plain scan of the items, for queries of every length: short queries match anywhere
+ * in the item just like longer ones, at its start, in the middle and at its end, and in items shorter than a trigram.
+ */
+public class SearchIndexTest {
+  private static final int ITEMS = 20000;
+  private static final String[] SYLLABLES = {
+      "san", "ta", "ma", "ri", "a", "ber", "lin", "to", "vil", "le", "o", "\u00C7a"};
+
+  private static PageLoader loaderOf(final String[] items) {
+    return new PageLoader() {
+      @Override
+      public int getCount() {
+        return items.length;
+      }
+
+      @Override
+      public String[] loadPage(int start, int count) {
+        return Arrays.copyOfRange(items, start, start + count);
+      }
+    };
+  }
+
+  private static int[] scan(String[] items, String query) {
+    String q = query.toLowerCase();
+    int[] matches = new int[items.length];
+    int n = 0;
+    for (int i = 0; i < items.length; i++) {
+      if (items[i] != null && items[i].toLowerCase().contains(q)) {
+        matches[n++] = i;
+      }
+    }
+    return Arrays.copyOf(matches, n);
+  }
+
+  @Test
+  public void shortQueriesMatchAnywhereInTheItem() {
+    String[] items = {"Lima", "Oslo", "Al", "a", "", null, "Tamale", "Ulm", "Salta", "Nice"};
+    SearchIndex index = SearchIndex.build(loaderOf(items));
+    // At the start, in the middle, at the end and alone
+    assertArrayEquals(new int[]{0, 2, 3, 6, 8}, index.search("a"));
+    assertArrayEquals(new int[]{0, 6}, index.search("ma"));
+    assertArrayEquals(new int[]{2, 6, 8}, index.search("AL"));
+    assertArrayEquals(new int[]{0, 1, 2, 6, 7, 8}, index.search("l"));
+    assertArrayEquals(new int[]{7}, index.search("lm"));
+    assertArrayEquals(new int[0], index.search("z"));
+  }
+
+  @Test
+  public void everyQueryLengthMatchesAPlainScan() {
+    Random random = new Random(42);
+    String[] items = new String[ITEMS];
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < ITEMS; i++) {
+      name.setLength(0);
+      for (int s = random.nextInt(5); s > 0; s--) {
+        name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+      }
+      items[i] = random.nextInt(100) == 0 ? null : name.toString();
+    }
+    SearchIndex index = SearchIndex.build(loaderOf(items));
+    for (int round = 0; round < 300; round++) {
+      // Pieces of real items, so most queries match something
+      String item = items[random.nextInt(ITEMS)];
+      if (item == null || item.isEmpty()) {
+        continue;
+      }
+      int start = random.nextInt(item.length());
+      int length = 1 + random.nextInt(Math.min(5, item.length() - start));
+      String query = item.substring(start, start + length);
+      query = random.nextBoolean() ? query.toUpperCase() : query;
+      assertArrayEquals(query, scan(items, query), index.search(query));
+    }
+  }
+}
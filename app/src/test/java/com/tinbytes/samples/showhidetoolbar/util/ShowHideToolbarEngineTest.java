@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.util;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShowHideToolbarEngineTest {
+  private static final int FRAMES = 10000;
+  private static final int TOOLBAR_HEIGHT = 168;
+
+  private static final OutputStream DISCARD = new OutputStream() {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  };
+
+  /**
+   * Scrolls down and back up in alternating bursts, settling the toolbar whenever scrolling stops, the way the
+   * listener drives the engine once per frame.
+   */
+  private static int scroll(ShowHideToolbarEngine engine, ScrollTrace.Recorder recorder, int frames) {
+    int verticalOffset = 0;
+    int seed = 42;
+    for (int frame = 0; frame < frames; frame++) {
+      seed = seed * 1103515245 + 12345;
+      int dy = ((seed >>> 16) % 60) * (frame / 500 % 2 == 0 ? 1 : -1);
+      verticalOffset = Math.max(0, verticalOffset + dy);
+      recorder.onScrolled(0, dy, verticalOffset, TOOLBAR_HEIGHT);
+      recorder.onFrame(verticalOffset);
+      engine.onScrolled(verticalOffset, dy, TOOLBAR_HEIGHT);
+      if (frame % 100 == 99) {
+        recorder.onScrollStateChanged(0);
+        switch (engine.onScrollIdle(TOOLBAR_HEIGHT)) {
+          case ShowHideToolbarEngine.SETTLE_SHOW:
+            engine.setTranslationY(0);
+            engine.setElevation(engine.getShownElevation());
+            break;
+          case ShowHideToolbarEngine.SETTLE_HIDE:
+            engine.setTranslationY(-TOOLBAR_HEIGHT);
+            engine.setElevation(0);
+            break;
+        }
+      }
+    }
+    return verticalOffset;
+  }
+
+  @Test
+  public void scrollAllocatesNothing() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    long thread = Thread.currentThread().getId();
+
+    ShowHideToolbarEngine engine = new ShowHideToolbarEngine(14f);
+    ScrollTrace.Recorder recorder = new ScrollTrace.Recorder(DISCARD);
+    // Warm up, and find out what reading the counter costs by itself
+    scroll(engine, recorder, FRAMES);
+    long before = threads.getThreadAllocatedBytes(thread);
+    long overhead = threads.getThreadAllocatedBytes(thread) - before;
+
+    before = threads.getThreadAllocatedBytes(thread);
+    scroll(engine, recorder, FRAMES);
+    long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+    assertEquals("Bytes allocated over " + FRAMES + " frames", 0, allocated);
+  }
+
+  @Test
+  public void toolbarHidesWhenScrolledDownAndShowsWhenScrolledUp() {
+    ShowHideToolbarEngine engine = new ShowHideToolbarEngine(14f);
+    int verticalOffset = 0;
+    for (int frame = 0; frame < 20; frame++) {
+      engine.onScrolled(verticalOffset += 30, 30, TOOLBAR_HEIGHT);
+    }
+    assertEquals(-TOOLBAR_HEIGHT, engine.getTranslationY(), 0);
+    assertEquals(ShowHideToolbarEngine.SETTLE_HIDE, engine.onScrollIdle(TOOLBAR_HEIGHT));
+
+    for (int frame = 0; frame < 10; frame++) {
+      engine.onScrolled(verticalOffset -= 30, -30, TOOLBAR_HEIGHT);
+    }
+    assertEquals(0, engine.getTranslationY(), 0);
+    assertEquals(14f, engine.getElevation(), 0);
+    assertEquals(ShowHideToolbarEngine.SETTLE_SHOW, engine.onScrollIdle(TOOLBAR_HEIGHT));
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.benchmarks;
+
+import com.tinbytes.samples.showhidetoolbar.util.ScrollTrace;
+import com.tinbytes.samples.showhidetoolbar.util.ShowHideToolbarEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocations per scroll event of ShowHideToolbarEngine, the way the listener drives it. Scores are in
+ * nanoseconds per event, run with -prof gc for the bytes allocated per event.
+ * <ul>
+ * <li>typical: drags and decaying flings in both directions, settling the toolbar after each gesture</li>
+ * <li>adversarial: direction flips on every event, with steps around the toolbar height and offsets around the
+ * hide threshold, so every branch is taken and none is predictable</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+  private static final int EVENTS = 4096;
+  private static final int TOOLBAR_HEIGHT = 168;
+  // Stands for scrolling going idle in a sequence
+  private static final int IDLE = Integer.MIN_VALUE;
+
+  private static final OutputStream DISCARD = new OutputStream() {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  };
+
+  @Param({"typical", "adversarial"})
+  public String sequence;
+
+  private final int[] steps = new int[EVENTS];
+  private ShowHideToolbarEngine engine;
+  private ScrollTrace.Recorder recorder;
+  private int verticalOffset;
+  // Every invocation starts scrolling from here, so offsets don't grow without bounds
+  private int startOffset;
+  private int maxOffset = Integer.MAX_VALUE;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    if ("typical".equals(sequence)) {
+      int i = 0;
+      int direction = 1;
+      while (i < EVENTS) {
+        if (random.nextBoolean()) {
+          // Fling: big steps decaying frame after frame
+          for (float dy = 40 + random.nextInt(80); dy >= 1 && i < EVENTS; dy *= 0.94f) {
+            steps[i++] = direction * (int) dy;
+          }
+        } else {
+          // Drag: small uneven steps
+          for (int n = 10 + random.nextInt(40); n > 0 && i < EVENTS; n--) {
+            steps[i++] = direction * random.nextInt(12);
+          }
+        }
+        if (i < EVENTS) {
+          steps[i++] = IDLE;
+        }
+        // Mostly keep reading down the list, sometimes go back up
+        direction = random.nextInt(4) == 0 ? -direction : 1;
+      }
+    } else {
+      for (int i = 0; i < EVENTS; i++) {
+        int dy = TOOLBAR_HEIGHT - 2 + random.nextInt(5);
+        switch (random.nextInt(4)) {
+          case 0:
+            dy = 1;
+            break;
+          case 1:
+            dy = 100000;
+            break;
+        }
+        steps[i] = i % 97 == 96 ? IDLE : (i % 2 == 0 ? dy : -dy);
+      }
+      // Hover around the offsets where the engine changes its mind
+      startOffset = TOOLBAR_HEIGHT;
+      maxOffset = TOOLBAR_HEIGHT * 4;
+    }
+    engine = new ShowHideToolbarEngine(14f);
+    recorder = new ScrollTrace.Recorder(DISCARD);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EVENTS)
+  public float scroll() {
+    verticalOffset = startOffset;
+    for (int step : steps) {
+      onStep(step);
+    }
+    return engine.getTranslationY() + engine.getElevation();
+  }
+
+  /**
+   * Same as scroll(), with every event also written to a ScrollTrace recording, one frame per event.
+   */
+  @Benchmark
+  @OperationsPerInvocation(EVENTS)
+  public float scrollRecorded() {
+    verticalOffset = startOffset;
+    for (int step : steps) {
+      onStep(step);
+      if (step == IDLE) {
+        recorder.onScrollStateChanged(0);
+      } else {
+        recorder.onScrolled(0, step, verticalOffset, TOOLBAR_HEIGHT);
+        recorder.onFrame(verticalOffset);
+      }
+    }
+    return engine.getTranslationY() + engine.getElevation();
+  }
+
+  private void onStep(int step) {
+    if (step == IDLE) {
+      switch (engine.onScrollIdle(TOOLBAR_HEIGHT)) {
+        case ShowHideToolbarEngine.SETTLE_SHOW:
+          engine.setTranslationY(0);
+          engine.setElevation(engine.getShownElevation());
+          break;
+        case ShowHideToolbarEngine.SETTLE_HIDE:
+          engine.setTranslationY(-TOOLBAR_HEIGHT);
+          engine.setElevation(0);
+          break;
+      }
+    } else {
+      verticalOffset = Math.max(0, Math.min(verticalOffset + step, maxOffset));
+      engine.onScrolled(verticalOffset, step, TOOLBAR_HEIGHT);
+    }
+  }
+}
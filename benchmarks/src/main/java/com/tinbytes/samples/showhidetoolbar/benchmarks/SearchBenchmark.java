@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015, Randy Saborio & Tinbytes, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.tinbytes.samples.showhidetoolbar.benchmarks;
+
+import com.tinbytes.samples.showhidetoolbar.util.PageLoader;
+import com.tinbytes.samples.showhidetoolbar.util.SearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of SearchIndex over 1M sorted, city-like names, in microseconds per query. The queries go from
+ * a single char found in most of the list to substrings found in a handful of items or none.
+ * build() measures building the index from scratch, the cost of the first query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class SearchBenchmark {
+  private static final int ITEMS = 1000000;
+  private static final String[] SYLLABLES = {
+      "san", "ta", "ma", "ri", "a", "ber", "lin", "to", "vil", "le", "port", "o", "ca", "mon", "de", "sur",
+      "ro", "sa", "burg", "ham", "ton", "ker", "el", "na", "qu", "es", "ti", "go", "ny", "wa", "zu", "ich"};
+
+  @Param({"s", "sa", "san", "ville", "port lin", "xyz"})
+  public String query;
+
+  private PageLoader loader;
+  private SearchIndex index;
+
+  /**
+   * Names of 2 to 5 syllables, some with a second word, sorted like the app's data.
+   */
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    final String[] items = new String[ITEMS];
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < ITEMS; i++) {
+      name.setLength(0);
+      int words = random.nextInt(4) == 0 ? 2 : 1;
+      for (int w = 0; w < words; w++) {
+        if (w > 0) {
+          name.append(' ');
+        }
+        int wordStart = name.length();
+        for (int s = 2 + random.nextInt(4); s > 0; s--) {
+          name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        name.setCharAt(wordStart, Character.toUpperCase(name.charAt(wordStart)));
+      }
+      items[i] = name.toString();
+    }
+    Arrays.sort(items);
+    loader = new PageLoader() {
+      @Override
+      public int getCount() {
+        return items.length;
+      }
+
+      @Override
+      public String[] loadPage(int start, int count) {
+        return Arrays.copyOfRange(items, start, start + count);
+      }
+    };
+    index = SearchIndex.build(loader);
+  }
+
+  @Benchmark
+  public int[] search() {
+    return index.search(query);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 2)
+  @Measurement(iterations = 5)
+  public SearchIndex build() {
+    return SearchIndex.build(loader);
+  }
+}